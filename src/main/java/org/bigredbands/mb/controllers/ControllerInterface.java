@@ -51,6 +51,23 @@ public interface ControllerInterface {
      */
     public void closeProgram();
 
+    /**
+     * Undoes the most recent edit to the project
+     */
+    public void undo();
+
+    /**
+     * Redoes the most recently undone edit
+     */
+    public void redo();
+
+    /**
+     * Sets the most edits that can be undone
+     *
+     * @param maxEdits - the new limit on the number of edits
+     */
+    public void setUndoLimit(int maxEdits);
+
     /**
      * Adds a new rank to the models and update the view
      *
@@ -110,6 +127,18 @@ public interface ControllerInterface {
      */
     public void assignCommand(String rankName, CommandPair commandPair);
 
+    /**
+     * Assigns the same command to several ranks in the current move, updating the later moves
+     * for all of them in one pass and refreshing the view once.  Displays an error message for
+     * any rank it could not add the command to.
+     *
+     * @param rankNames
+     *            - the ranks to add the command to
+     * @param commandPair
+     *            - the command and number of counts
+     */
+    public void assignCommand(HashSet<String> rankNames, CommandPair commandPair);
+
     /**
      * Sets the selected rank to the specified rank
      *
@@ -198,12 +227,43 @@ public interface ControllerInterface {
     public boolean isPlaybackRunning();
 
     /**
-     * Gets the rank positions from the playback thread to be displayed to the user
+     * Gets the rank positions from the playback thread to be displayed to the user, or the
+     * positions at the count sought to while playback is stopped.  The same map and positions
+     * are written over for the next frame, so they are only good until then.
      *
      * @return - a hashmap mapping the rank name to its current position in playback
      */
     public HashMap<String, RankPosition> getPlaybackPositions();
 
+    /**
+     * Jumps to a count of the whole show, carrying on playback from there if it is running
+     *
+     * @param count - the count number, counting from the start of the first move
+     */
+    public void seek(int count);
+
+    /**
+     * Checks if the field is showing the ranks partway through a move, after seeking while
+     * playback is stopped
+     *
+     * @return - true if the field shows the count sought to, false if not
+     */
+    public boolean isSeeking();
+
+    /**
+     * Gets the count of the whole show that the field is showing
+     *
+     * @return - the count number, counting from the start of the first move
+     */
+    public int getSeekCount();
+
+    /**
+     * Gets the number of counts in the whole show
+     *
+     * @return - the number of counts from the start of the first move to the end of the last
+     */
+    public int getTotalCounts();
+
     /**
      * Rename the specified command to a new name, but keep the same functionality
      *
@@ -0,0 +1,162 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.ArrayDeque;
+
+/**
+ * The edits that can be undone and redone.  Each edit only records what it changed, such as the
+ * old and new command lists of the ranks it touched, rather than a copy of the whole drill.  The
+ * number of edits kept is limited, and the oldest edits are forgotten first once the limit is
+ * reached, so the memory used stays bounded however long the project is worked on.
+ */
+public class EditHistory {
+
+    // The number of edits kept unless another limit is set
+    public static final int DEFAULT_MAX_EDITS = 100;
+
+    // Edits recorded within this many milliseconds of the last one may be merged into it, so
+    // that dragging a rank is undone in one step instead of once for every mouse event
+    public static final long MERGE_INTERVAL = 500;
+
+    /**
+     * A change to the drill that knows how to take itself back and make itself again
+     */
+    static abstract class Edit {
+
+        /**
+         * Takes back the edit
+         *
+         * @return - the move the edit was made in, which is shown once it is undone
+         */
+        abstract int undo();
+
+        /**
+         * Makes the edit again after it was undone
+         *
+         * @return - the move the edit was made in, which is shown once it is redone
+         */
+        abstract int redo();
+
+        /**
+         * Folds an edit made straight after this one into this one, if the two are parts of
+         * the same change
+         *
+         * @param next - the edit made after this one
+         * @return - true if the edit was merged, false if it has to be recorded by itself
+         */
+        boolean merge(Edit next) {
+            return false;
+        }
+    }
+
+    // The edits that can be undone and redone, most recent first
+    private final ArrayDeque<Edit> undoEdits = new ArrayDeque<Edit>();
+    private final ArrayDeque<Edit> redoEdits = new ArrayDeque<Edit>();
+
+    // The most edits kept for undoing
+    private int maxEdits;
+
+    // The time the last edit was recorded, from System.currentTimeMillis
+    private long lastRecordTime = 0;
+
+    public EditHistory() {
+        this(DEFAULT_MAX_EDITS);
+    }
+
+    /**
+     * Creates an empty history
+     *
+     * @param maxEdits - the most edits to keep for undoing
+     */
+    public EditHistory(int maxEdits) {
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * Records an edit that was just made.  Anything that was undone can no longer be redone.
+     *
+     * @param edit - the edit that was made
+     */
+    void record(Edit edit) {
+        redoEdits.clear();
+
+        long now = System.currentTimeMillis();
+        Edit lastEdit = undoEdits.peekFirst();
+        if (lastEdit == null || now - lastRecordTime > MERGE_INTERVAL || !lastEdit.merge(edit)) {
+            undoEdits.addFirst(edit);
+            trim();
+        }
+        lastRecordTime = now;
+    }
+
+    /**
+     * Undoes the most recent edit that has not been undone
+     *
+     * @return - the move the edit was made in, or -1 if there is nothing to undo
+     */
+    int undo() {
+        Edit edit = undoEdits.pollFirst();
+        if (edit == null) {
+            return -1;
+        }
+        redoEdits.addFirst(edit);
+        lastRecordTime = 0;
+        return edit.undo();
+    }
+
+    /**
+     * Redoes the most recently undone edit
+     *
+     * @return - the move the edit was made in, or -1 if there is nothing to redo
+     */
+    int redo() {
+        Edit edit = redoEdits.pollFirst();
+        if (edit == null) {
+            return -1;
+        }
+        undoEdits.addFirst(edit);
+        lastRecordTime = 0;
+        return edit.redo();
+    }
+
+    public boolean canUndo() {
+        return !undoEdits.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoEdits.isEmpty();
+    }
+
+    /**
+     * Forgets every edit, such as when another project is opened
+     */
+    public void clear() {
+        undoEdits.clear();
+        redoEdits.clear();
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    /**
+     * Sets the most edits kept for undoing, forgetting the oldest edits if there are now too many
+     *
+     * @param maxEdits - the new limit on the number of edits
+     */
+    public void setMaxEdits(int maxEdits) {
+        this.maxEdits = maxEdits;
+        trim();
+    }
+
+    /**
+     * Forgets the oldest edits until the history is within its limit
+     */
+    private void trim() {
+        while (undoEdits.size() > Math.max(maxEdits, 0)) {
+            undoEdits.pollLast();
+        }
+        while (redoEdits.size() > Math.max(maxEdits, 0)) {
+            redoEdits.pollLast();
+        }
+    }
+}
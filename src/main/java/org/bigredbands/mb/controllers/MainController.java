@@ -3,10 +3,17 @@ package org.bigredbands.mb.controllers;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.pdfbox.exceptions.COSVisitorException;
@@ -14,7 +21,9 @@ import org.bigredbands.mb.exceptions.DrillXMLException;
 import org.bigredbands.mb.models.CommandPair;
 import org.bigredbands.mb.models.DrillInfo;
 import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.PositionBuffer;
 import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.SongTimeline;
 import org.bigredbands.mb.views.MainView;
 import org.bigredbands.mb.views.ViewInterface;
 import org.xml.sax.SAXException;
@@ -56,6 +65,15 @@ public class MainController implements ControllerInterface, SynchronizedControll
     // The playback thread used exclusively when displaying playback to the user
     private Thread playbackThread = null;
 
+    // Schedules the playback counts on the playback thread, and keeps track of how far it drifts
+    private PlaybackController playbackClock = null;
+
+    // Works out the frames of playback ahead of the one being drawn
+    private PlaybackFrameProducer frameProducer = null;
+
+    // Hands the counts reached by the playback thread over to the event thread to be drawn
+    private PlaybackFrameDelivery frameDelivery = null;
+
     // True if playback is currently running, false if not
     private boolean playbackRunning = false;
 
@@ -67,17 +85,66 @@ public class MainController implements ControllerInterface, SynchronizedControll
 
     private int playbackCountTotal = 0;
 
+    // The count of the whole show sought to while playback is stopped, counting from the start of
+    // the first move, or -1 if the field shows the end of the current move
+    private int seekCount = -1;
+
+    // A snapshot of the drill taken when playback started, which playback reads without locking
+    private DrillInfo playbackDrill;
+
+    // The positions handed to the field while playing back or seeking.  The position objects are
+    // loaded again for each frame drawn, so drawing playback does not allocate any.
+    private final HashMap<String, RankPosition> framePositions = new HashMap<String, RankPosition>();
+
+    // The buffer the positions at the count sought to are worked out in
+    private PositionBuffer seekBuffer = null;
+
+    // The start of the playback move, handed to the field while no frame is ready yet.  It holds
+    // the snapshot's own positions, and is only filled again when the move shown changes.
+    private final HashMap<String, RankPosition> startFramePositions = new HashMap<String, RankPosition>();
+    private Move startFrameMove = null;
+
+    // How often the field is redrawn during playback, in milliseconds (about 60 frames per second)
+    public static final int RENDER_INTERVAL = 1000 / 60;
+
+    // Redraws the field between counts so playback moves smoothly instead of once per count
+    private Timer renderClock = null;
+
+    // The time the current playback count was reached, from System.nanoTime
+    private long playbackCountStartTime = 0;
+
+    // The length of the current playback count in milliseconds
+    private int playbackCountDuration = 0;
+
+    // Carries edits forward through the later moves on its own thread
+    private PropagationWorker propagationWorker;
+
+    // The edits that can be undone and redone
+    private EditHistory editHistory = new EditHistory();
+
     /**
      * The constructor that prepares this class for use
      */
     public MainController() {
-        initialize();
+        initialize(null);
+    }
+
+    /**
+     * Creates a controller that presents to the given view instead of opening the intro screen,
+     * such as a view standing in for the windows in tests
+     *
+     * @param view - the view to present to
+     */
+    MainController(ViewInterface view) {
+        initialize(view);
     }
 
     /**
      * Initializes this class for use
+     *
+     * @param view - the view to present to, or null to create the main view and show the intro screen
      */
-    private void initialize() {
+    private void initialize(ViewInterface view) {
         //TODO: used to initialize with createnewproject, but cant do that any more due to view code in the function
         //Initialize all necessary variables
         fileUrl = "";
@@ -88,10 +155,20 @@ public class MainController implements ControllerInterface, SynchronizedControll
 
         //TODO: fill me in! initialize the view and anything else that needs to be done here
         //Set up the main view and display the intro screen to the user
-        mainView = new MainView(this);
-        mainView.createIntroView();
+        if (view == null) {
+            mainView = new MainView(this);
+            mainView.createIntroView();
+        }
+        else {
+            mainView = view;
+        }
 
         mainThread = Thread.currentThread();
+
+        propagationWorker = new PropagationWorker(this);
+        Thread propagationThread = new Thread(propagationWorker, "Propagation");
+        propagationThread.setDaemon(true);
+        propagationThread.start();
     }
 
     /**
@@ -115,13 +192,27 @@ public class MainController implements ControllerInterface, SynchronizedControll
             return;
         }
 
+        DrillInfo snapshot = snapshotDrill();
         XMLGenerator generator = new XMLGenerator();
-        generator.save(drillInfo, file);
+        generator.save(snapshot, file);
 
         //TODO: assuming nothing went wrong with the save...
         fileUrl = file.getAbsolutePath();
     }
 
+    /**
+     * Takes a snapshot of the drill once every pending edit has been carried through the later
+     * moves, for reading the whole drill without holding its lock
+     *
+     * @return - a snapshot of the drill
+     */
+    DrillInfo snapshotDrill() {
+        propagationWorker.finish();
+        synchronized (drillInfo) {
+            return drillInfo.snapshot();
+        }
+    }
+
     /**
      * Loads the project at the location fileUrl
      *
@@ -139,7 +230,10 @@ public class MainController implements ControllerInterface, SynchronizedControll
         XMLParser parser = new XMLParser();
 
         try {
-            drillInfo = parser.load(file);
+            DrillInfo loadedDrillInfo = parser.load(file);
+            propagationWorker.cancel();
+            drillInfo = loadedDrillInfo;
+            editHistory.clear();
         } catch (ParserConfigurationException e) {
             e.printStackTrace();
             mainView.displayError(e.getMessage());
@@ -159,6 +253,7 @@ public class MainController implements ControllerInterface, SynchronizedControll
         }
 
         currentMove = 0;
+        seekCount = -1;
         selectedRanks.clear();
 
         if (!mainView.isProjectViewCreated()) {
@@ -179,9 +274,12 @@ public class MainController implements ControllerInterface, SynchronizedControll
     public void createEmptyProject() {
         //TODO: finish me
         fileUrl = "";
+        propagationWorker.cancel();
         drillInfo = new DrillInfo();
+        editHistory.clear();
         drillInfo.getMoves().add(new Move());
         currentMove = 0;
+        seekCount = -1;
         selectedRanks.clear();
 
         if (!mainView.isProjectViewCreated()) {
@@ -234,7 +332,22 @@ public class MainController implements ControllerInterface, SynchronizedControll
         //TODO for Dave: Sanity check moveNumber to see if it actually exists
         //TODO: thanks Dave! -Victoria
         if(moveNumber >= 0 && moveNumber < getNumberOfMoves()) {
-            return drillInfo.getMoves().get(moveNumber).getEndPositions();
+            Move move = drillInfo.getMoves().get(moveNumber);
+            if (moveNumber == currentMove) {
+                //the current move is published on demand, so it is always up to date
+                synchronized (drillInfo) {
+                    return move.publishPositions();
+                }
+            }
+
+            //other moves may still be being propagated, so draw the positions published for them
+            HashMap<String, RankPosition> publishedPositions = move.getPublishedPositions();
+            if (publishedPositions == null) {
+                synchronized (drillInfo) {
+                    publishedPositions = move.publishPositions();
+                }
+            }
+            return publishedPositions;
         } else {
             return new HashMap<String,RankPosition>();
         }
@@ -253,7 +366,11 @@ public class MainController implements ControllerInterface, SynchronizedControll
         if(counts <= 0) {
             return;
         }
-        drillInfo.addMove(counts, currentMove + 1);
+        propagationWorker.finish();
+        synchronized (drillInfo) {
+            drillInfo.addMove(counts, currentMove + 1);
+            recordEdit(new MoveEdit(currentMove + 1, drillInfo.getMoves().get(currentMove + 1), false));
+        }
         currentMove = currentMove + 1;
         if (!selectedRanks.isEmpty()) {
             mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
@@ -273,7 +390,11 @@ public class MainController implements ControllerInterface, SynchronizedControll
         if(moveNum <= 0 || moveNum >= drillInfo.getMoves().size()) {
             return;
         }
-        drillInfo.deleteMove(moveNum);
+        propagationWorker.finish();
+        synchronized (drillInfo) {
+            recordEdit(new MoveEdit(moveNum, drillInfo.getMoves().get(moveNum), true));
+            drillInfo.deleteMove(moveNum);
+        }
         currentMove = moveNum-1;
 
         for(String rankName : mainView.getRankPositions().keySet()) {
@@ -304,8 +425,9 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void changeMoves(int targetMove) {
-        if (targetMove != currentMove) {
+        if (targetMove != currentMove || seekCount >= 0) {
             currentMove = targetMove;
+            seekCount = -1;
             if (!selectedRanks.isEmpty()) {
                 mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks, drillInfo.getMoves().get(currentMove).getCommands()));
             }
@@ -321,7 +443,14 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void addRank(String rankName, RankPosition rankPosition) {
-        String errorMessage = drillInfo.addRankToMoves(rankName, rankPosition);
+        propagationWorker.finish();
+        String errorMessage;
+        synchronized (drillInfo) {
+            errorMessage = drillInfo.addRankToMoves(rankName, rankPosition);
+            if (errorMessage.isEmpty()) {
+                recordEdit(new RankEdit(Collections.singleton(rankName), false));
+            }
+        }
         if (errorMessage.isEmpty()) {
             // TODO: maybe not clear? idk
             selectedRanks.clear();
@@ -335,12 +464,24 @@ public class MainController implements ControllerInterface, SynchronizedControll
     }
 
     public void updateInitialPosition(String rankName, RankPosition newPos) {
-        drillInfo.getMoves().get(0).updatePositions(rankName,newPos);
-        updatePositions(rankName);
-
+        RankPosition oldPos;
+        synchronized (drillInfo) {
+            Move firstMove = drillInfo.getMoves().get(0);
+            oldPos = firstMove.getStartPositions().get(rankName);
+            firstMove.updatePositions(rankName,newPos);
+        }
+        //a rank dragged along with the rest of the selection moves with that whole set of ranks
+        HashSet<String> movedRanks = new HashSet<String>();
+        if (selectedRanks.contains(rankName)) {
+            movedRanks.addAll(selectedRanks);
+        }
+        movedRanks.add(rankName);
+        recordEdit(new PositionEdit(rankName, oldPos, newPos, movedRanks));
+        propagatePositions(rankName, 1);
+        refreshRank(rankName);
     }
 
-    private ArrayList<CommandPair> getSharedCommands(HashSet<String> rankNames, HashMap<String,ArrayList<CommandPair>>commands) {
+    private ArrayList<CommandPair> getSharedCommands(HashSet<String> rankNames, Map<String,ArrayList<CommandPair>>commands) {
         if(rankNames.size()==0) {
             return new ArrayList<CommandPair>();
         }
@@ -431,16 +572,46 @@ public class MainController implements ControllerInterface, SynchronizedControll
      * @param rankName - the rank whose positions need to be updated.
      */
     private void updatePositions(String rankName) {
-        for (int i = currentMove+1; i < drillInfo.getMoves().size(); i++) {
-            drillInfo.getMoves().get(i).updatePositions(rankName, drillInfo.getMoves().get(i-1).getEndPositions().get(rankName));
-        }
+        propagatePositions(rankName, currentMove+1);
+        refreshRank(rankName);
+    }
 
+    /**
+     * Carries the end position of a rank forward into the start position of each following move, starting
+     * at the given move.  Stops at the first move whose start position already came from the current end
+     * position of the move before it, since nothing after that move can have changed.  Runs on the
+     * propagation thread, so the later moves fill in after this returns.
+     *
+     * @param rankName - the rank whose positions need to be updated
+     * @param firstMove - the first move whose start position may be out of date
+     */
+    private void propagatePositions(String rankName, int firstMove) {
+        propagationWorker.submit(drillInfo, rankName, firstMove);
+    }
+
+    /**
+     * Selects the rank and refreshes the view after its positions have changed
+     *
+     * @param rankName - the rank that changed
+     */
+    private void refreshRank(String rankName) {
         //TODO: may not be necessary later when you have to select ranks by clicking on them first
         selectedRanks.add(rankName);
         mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
         mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
     }
 
+    /**
+     * Selects the ranks and refreshes the view once after all of their positions have changed
+     *
+     * @param rankNames - the ranks that changed
+     */
+    private void refreshRanks(HashSet<String> rankNames) {
+        selectedRanks.addAll(rankNames);
+        mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
+        mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
+    }
+
     /**
      * Sets the selected rank to the specified rank
      *
@@ -494,8 +665,19 @@ public class MainController implements ControllerInterface, SynchronizedControll
     public void deleteRank(HashSet<String>rankNames) {
         HashSet<String> oldSelectedRanks = (HashSet<String>)rankNames.clone();
 
+        //everything the ranks hold in every move is kept, so that deleting them can be undone
+        RankEdit rankEdit;
+        synchronized (drillInfo) {
+            rankEdit = new RankEdit(oldSelectedRanks, true);
+        }
+        if (!rankEdit.isEmpty()) {
+            recordEdit(rankEdit);
+        }
+
         for(String rankName : oldSelectedRanks) {
-            drillInfo.deleteRank(rankName);
+            synchronized (drillInfo) {
+                drillInfo.deleteRank(rankName);
+            }
             if (selectedRanks.contains(rankName)) {
                 selectedRanks.remove(rankName);
                 mainView.updateSelectedRank(new HashSet<String>(), new ArrayList<CommandPair>());
@@ -520,9 +702,29 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void setSongConstants(HashMap<Integer, Integer> tempoHashMap, HashMap<Integer, Integer> countsHashMap, String songName) {
-        drillInfo.setTempoHashMap(tempoHashMap);
-        drillInfo.setCountsHashMap(countsHashMap);
-        drillInfo.setSongName(songName);
+        SongEdit songEdit;
+        synchronized (drillInfo) {
+            songEdit = new SongEdit(drillInfo.getTempoHashMap(), drillInfo.getCountsHashMap(), drillInfo.getSongName(),
+                    tempoHashMap, countsHashMap, songName);
+        }
+        recordEdit(songEdit);
+        updateSongConstants(tempoHashMap, countsHashMap, songName);
+        mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
+    }
+
+    /**
+     * Replaces the song constants of the drill while holding its lock
+     *
+     * @param tempoHashMap - a hashmap mapping the measure number of a tempo change to the new tempo
+     * @param countsHashMap - a hashmap mapping the measure number of a count change to the new counts per measure
+     * @param songName - the name of the song
+     */
+    private void updateSongConstants(HashMap<Integer, Integer> tempoHashMap, HashMap<Integer, Integer> countsHashMap, String songName) {
+        synchronized (drillInfo) {
+            drillInfo.setTempoHashMap(tempoHashMap);
+            drillInfo.setCountsHashMap(countsHashMap);
+            drillInfo.setSongName(songName);
+        }
     }
 
     /**
@@ -531,22 +733,182 @@ public class MainController implements ControllerInterface, SynchronizedControll
     @Override
     public void startPlayback() {
         //TODO: paint the present first!
+        propagationWorker.finish();
         if (!isPlaybackRunning() && playbackMove < drillInfo.getMoves().size()) {
+            synchronized (drillInfo) {
+                playbackDrill = drillInfo.snapshot();
+            }
             playbackRunning = true;
+            frameDelivery = new PlaybackFrameDelivery(mainView);
             mainView.disableProjectButtons();
-            playbackCount = 0;
-            playbackMove = 1;
-            playbackThread = new Thread(new PlaybackController(this));
+            //playback starts from the count sought to, if any
+            setPlaybackPosition(Math.max(seekCount, 0));
+            seekCount = -1;
+            playbackClock = new PlaybackController(this);
+            playbackThread = new Thread(playbackClock);
             playbackThread.start();
+            startRenderClock();
             System.out.println("Playback Started.");
             mainView.updateFootballField(playbackMove, playbackCount);
         }
     }
 
+    /**
+     * Moves playback to a count of the whole show and starts working out frames from there.  The
+     * count is found in the moves with the timeline of the drill being played back.
+     *
+     * @param count - the count number, counting from the start of the first move
+     */
+    private synchronized void setPlaybackPosition(int count) {
+        SongTimeline timeline = playbackDrill.getTimeline();
+        int firstCount = timeline.getMoveStart(1);
+        count = Math.max(0, Math.min(count, timeline.getTotalCounts() - firstCount));
+        playbackCountTotal = count;
+        playbackMove = count == 0 ? 1 : timeline.getMove(firstCount + count);
+        playbackCount = firstCount + count - timeline.getMoveStart(playbackMove);
+        startPlaybackCount();
+
+        if (frameProducer != null) {
+            frameProducer.stop();
+        }
+        frameProducer = new PlaybackFrameProducer(playbackDrill, (long) count * PlaybackFrameProducer.STEPS_PER_COUNT);
+        new Thread(frameProducer).start();
+    }
+
+    /**
+     * Jumps to a count of the whole show.  While playback is running, playback carries on from
+     * that count.  Otherwise the field shows the ranks at that count, in the move the count is in,
+     * until the move is changed or edited, and playback starts from there.  The count is found
+     * with the drill's timeline, and whole counts are drawn from the moves' cached keyframes, so
+     * dragging across a long show stays quick.
+     *
+     * @param count - the count number, counting from the start of the first move
+     */
+    @Override
+    public void seek(int count) {
+        if (isPlaybackRunning()) {
+            setPlaybackPosition(count);
+            mainView.updateFootballField(playbackMove, playbackCount);
+            return;
+        }
+
+        propagationWorker.finish();
+        if (drillInfo.getMoves().size() < 2) {
+            return;
+        }
+        SongTimeline timeline;
+        synchronized (drillInfo) {
+            timeline = drillInfo.getTimeline();
+        }
+        int firstCount = timeline.getMoveStart(1);
+        count = Math.max(0, Math.min(count, timeline.getTotalCounts() - firstCount));
+        int move = count == 0 ? 1 : timeline.getMove(firstCount + count);
+        int moveCount = firstCount + count - timeline.getMoveStart(move);
+
+        //scrubbing within the move already shown only has to redraw the field, not the moves
+        if (move != currentMove) {
+            changeMoves(move);
+        }
+
+        //the end of a move is what the field shows anyway
+        int newSeekCount = moveCount < drillInfo.getMoves().get(move).getCounts() ? count : -1;
+        if (newSeekCount != seekCount) {
+            seekCount = newSeekCount;
+            mainView.updateFootballField(currentMove, moveCount);
+        }
+    }
+
+    /**
+     * Checks if the field is showing the ranks partway through a move, after seeking while
+     * playback is stopped
+     *
+     * @return - true if the field shows the count sought to, false if it shows the end of the current move
+     */
+    @Override
+    public boolean isSeeking() {
+        return seekCount >= 0;
+    }
+
+    /**
+     * Gets the count of the whole show that the field is showing
+     *
+     * @return - the count number, counting from the start of the first move
+     */
+    @Override
+    public int getSeekCount() {
+        if (isPlaybackRunning()) {
+            return getCountTotal();
+        }
+        if (seekCount >= 0) {
+            return seekCount;
+        }
+        if (drillInfo.getMoves().size() < 2) {
+            return 0;
+        }
+        synchronized (drillInfo) {
+            SongTimeline timeline = drillInfo.getTimeline();
+            return Math.max(timeline.getMoveStart(currentMove + 1) - timeline.getMoveStart(1), 0);
+        }
+    }
+
+    /**
+     * Gets the number of counts in the whole show
+     *
+     * @return - the number of counts from the start of the first move to the end of the last
+     */
+    @Override
+    public int getTotalCounts() {
+        if (drillInfo.getMoves().size() < 2) {
+            return 0;
+        }
+        synchronized (drillInfo) {
+            SongTimeline timeline = drillInfo.getTimeline();
+            return timeline.getTotalCounts() - timeline.getMoveStart(1);
+        }
+    }
+
+    /**
+     * Starts the clock that redraws the field at display rate while playback is running
+     */
+    private void startRenderClock() {
+        renderClock = new Timer(RENDER_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (isPlaybackRunning()) {
+                    mainView.updateFootballField(playbackMove, playbackCount);
+                }
+                else {
+                    ((Timer) e.getSource()).stop();
+                }
+            }
+        });
+        renderClock.start();
+    }
+
+    /**
+     * Stops the render clock if it is running
+     */
+    private void stopRenderClock() {
+        if (renderClock != null) {
+            renderClock.stop();
+            renderClock = null;
+        }
+    }
+
+    /**
+     * Records that a new playback count was just reached, so frames drawn before the next count
+     * can tell how far into the count they are
+     */
+    private synchronized void startPlaybackCount() {
+        playbackCountStartTime = System.nanoTime();
+        playbackCountDuration = getPlaybackSpeed(0);
+    }
+
     /**
      * Stops the playback and resumes the normal view for the user
      */
     public void mainThreadStopPlayback() {
+        stopRenderClock();
         playbackRunning = false;
         playbackCount = 0;
         playbackCountTotal = 0;
@@ -562,45 +924,69 @@ public class MainController implements ControllerInterface, SynchronizedControll
             }
         }
         playbackThread = null;
+        frameProducer.stop();
         mainView.enableProjectButtons();
-        System.out.println("Playback Ended.");
+        printPlaybackDrift();
     }
 
     /**
-     * Increments the playback count showing the next step to the user
+     * Moves playback on to a later count and shows it to the user.  The move and count are found
+     * with the timeline of the drill being played back, so jumping over several counts after
+     * playback fell behind lands in the right move.
+     *
+     * @param counts - the number of counts to move on
      */
     @Override
-    public synchronized void incrementPlaybackCount() {
+    public synchronized void incrementPlaybackCount(int counts) {
         //sanity check on the thread existing
         if (isPlaybackRunning()) {
             // TODO: consider making the other methods synchronized as well that way no method
             // from the controller may repaint the screen during playback
             // TODO: resizing the screen may fuck up playback....
-            playbackCount++;
-            playbackCountTotal++;
-            if (playbackCount > drillInfo.getMoves().get(playbackMove).getCounts()) {//TODO: may be a concurrency issue here if someone else is editing the moves
-                playbackCount = 1;
-                playbackMove++;
-            }
-            if (playbackMove >= drillInfo.getMoves().size()) {//TODO: may be a concurrency issue here if someone else is editing the moves
+            SongTimeline timeline = playbackDrill.getTimeline();
+            int firstCount = timeline.getMoveStart(1);
+            playbackCountTotal += counts;
+            if (firstCount + playbackCountTotal > timeline.getTotalCounts()) {
                 playbackRunning = false;
                 playbackCount = 0;
                 playbackCountTotal = 0;
                 playbackMove = 1;
-                mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
                 playbackThread = null;
-                mainView.enableProjectButtons();
-                mainView.setPlaybackButtonState(playbackRunning);
-                System.out.println("Playback Ended.");
+                frameProducer.stop();
+                printPlaybackDrift();
+
+                //this is the playback thread, so the view is restored on the event thread
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
+                        mainView.enableProjectButtons();
+                        mainView.setPlaybackButtonState(isPlaybackRunning());
+                    }
+                });
             }
             else {
-                mainView.updateFootballField(playbackMove, playbackCount);
+                playbackMove = timeline.getMove(firstCount + playbackCountTotal);
+                playbackCount = firstCount + playbackCountTotal - timeline.getMoveStart(playbackMove);
+                startPlaybackCount();
+                frameDelivery.publish(playbackMove, playbackCount);
                 System.out.println("From the playbackThread - Move Number: " + playbackMove + ", Count: " + playbackCount);
             }
 
         }
     }
 
+    /**
+     * Reports that playback ended, how far it drifted from the tempo and how often the frames
+     * were not ready in time
+     */
+    private void printPlaybackDrift() {
+        System.out.println("Playback Ended.  Drift: " + playbackClock.getDrift() / 1000000.0 + " ms (max "
+                + playbackClock.getMaxDrift() / 1000000.0 + " ms), skipped counts: " + playbackClock.getSkippedCounts()
+                + ", frame underruns: " + frameProducer.getUnderruns()
+                + ", dropped frames: " + frameDelivery.getDroppedFrames());
+    }
+
     private synchronized int getCountTotal() {
         return playbackCountTotal;
     }
@@ -616,13 +1002,119 @@ public class MainController implements ControllerInterface, SynchronizedControll
     }
 
     /**
-     * Gets the rank positions from the playback thread to be displayed to the user
+     * Redraws the field and the move thumbnails once the propagation thread has updated later moves
+     */
+    @Override
+    public void positionsPropagated() {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (currentMove < drillInfo.getMoves().size()) {
+                    mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the rank positions from the playback thread to be displayed to the user.  The frame
+     * has already been worked out by the frame producer, so drawing does not evaluate any ranks.
+     * While playback is stopped, these are the positions at the count sought to.  The same map
+     * and positions are written over for the next frame, so they are only good until then.
      *
      * @return - a hashmap mapping the rank name to its current position in playback
      */
     @Override
     public HashMap<String, RankPosition> getPlaybackPositions() {
-        return drillInfo.getMoves().get(playbackMove).getIntermediatePositions(playbackCount);
+        boolean seeking;
+        long step;
+        int move;
+        PlaybackFrameProducer producer;
+        DrillInfo playbackSnapshot;
+        synchronized (this) {
+            seeking = !playbackRunning && seekCount >= 0;
+            step = (long) ((playbackCountTotal + getPlaybackCountFraction()) * PlaybackFrameProducer.STEPS_PER_COUNT);
+            move = playbackMove;
+            producer = frameProducer;
+            playbackSnapshot = playbackDrill;
+        }
+        if (seeking) {
+            return getSeekPositions();
+        }
+
+        PlaybackFrameProducer.Frame frame = producer.getFrame(step);
+        if (frame == null) {
+            //nothing is ready yet right after starting or seeking, so show where the move starts
+            Move startMove = playbackSnapshot.getMoves().get(move);
+            if (startMove != startFrameMove) {
+                startFramePositions.clear();
+                startFramePositions.putAll(startMove.getStartPositions());
+                startFrameMove = startMove;
+            }
+            return startFramePositions;
+        }
+
+        frame.getPositions().load(frame.getRankNames(), framePositions);
+        return framePositions;
+    }
+
+    /**
+     * Gets the rank positions at the count sought to while playback is stopped
+     */
+    private HashMap<String, RankPosition> getSeekPositions() {
+        synchronized (drillInfo) {
+            SongTimeline timeline = drillInfo.getTimeline();
+            int moveCount = timeline.getMoveStart(1) + seekCount - timeline.getMoveStart(currentMove);
+            Move move = drillInfo.getMoves().get(currentMove);
+            String[] rankNames = move.getRankOrder();
+            if (seekBuffer == null || seekBuffer.getCapacity() < rankNames.length) {
+                seekBuffer = new PositionBuffer(rankNames.length);
+            }
+            move.evaluate(moveCount, seekBuffer);
+            seekBuffer.load(rankNames, framePositions);
+        }
+        return framePositions;
+    }
+
+    /**
+     * Gets how full the buffer of playback frames is, to see whether a large show can keep up
+     *
+     * @return - the number of frames ready from the one drawn last onwards, or 0 if playback has not started
+     */
+    public synchronized int getPlaybackFrameOccupancy() {
+        return frameProducer == null ? 0 : frameProducer.getOccupancy();
+    }
+
+    /**
+     * Gets the number of playback frames that were wanted before they were ready
+     *
+     * @return - the number of underruns in the current or last playback
+     */
+    public synchronized int getPlaybackFrameUnderruns() {
+        return frameProducer == null ? 0 : frameProducer.getUnderruns();
+    }
+
+    /**
+     * Gets the number of counts reached by the playback thread that were not drawn, because the
+     * event thread was still busy when the next count was reached
+     *
+     * @return - the number of dropped frames in the current or last playback
+     */
+    public synchronized int getDroppedPlaybackFrames() {
+        return frameDelivery == null ? 0 : frameDelivery.getDroppedFrames();
+    }
+
+    /**
+     * Gets how far playback is through the current count, based on the time since the count was reached
+     *
+     * @return - the fraction of the count that has passed, from 0 to 1
+     */
+    private synchronized float getPlaybackCountFraction() {
+        if (!playbackRunning || playbackCountDuration <= 0) {
+            return 0.0f;
+        }
+        float elapsed = (System.nanoTime() - playbackCountStartTime) / 1000000.0f;
+        return Math.max(0.0f, Math.min(1.0f, elapsed / playbackCountDuration));
     }
 
     /**
@@ -639,67 +1131,14 @@ public class MainController implements ControllerInterface, SynchronizedControll
     /**
      * Gets the speed at which the playback is updated, based on the current count
      *
-     * @return
+     * @param countsAhead - how many counts after the current count to get the speed of
+     * @return - the length of the count in milliseconds
      */
     @Override
-    public synchronized int getPlaybackSpeed() {
-        HashMap<Integer, Integer>countMap = getCountHash();
-        HashMap<Integer, Integer>tempoMap = getTempoHash();
-        if(tempoMap.isEmpty()) {
-            return 500;
-        }
-        int meas;
-        if(countMap.isEmpty()) {
-            // default to 4/4 time
-            int currentCount = getCountTotal();
-            meas = (Math.max(currentCount-1,0))/4 + 1; // automatically truncates
-        }
-        else {
-            Integer[] measCounts = new Integer[0];
-            measCounts = countMap.keySet().toArray(measCounts);
-            Arrays.sort(measCounts);
-
-            int currentCount = getCountTotal();
-            int prevM = 1;
-            int prevC = 4;
-            meas = 1;
-            for(Integer measure : measCounts) {
-                int countDiff = (measure - prevM)*prevC;
-                if (currentCount - countDiff <= 0) {
-                    // means the currentCount is in this interval
-                    break;
-                }
-                else {
-                    // means the currentCount is in the next interval
-                    currentCount-=countDiff;
-                    meas+=(measure-prevM);
-                }
-                prevM = (int)measure;
-                prevC = countMap.get((int)measure);
-            }
-            // the last interval
-            meas+=(Math.max(currentCount-1,0))/prevC;
-
-        }
-        Integer[] measTempos = new Integer[0];
-        measTempos = tempoMap.keySet().toArray(measTempos);
-        Arrays.sort(measTempos);
-
-        int tempo = 120;
-        for(Integer measure : measTempos) {
-            if(meas < measure) {
-                // that is, the measure we're working on is before the next change
-                break;
-            }
-            else {
-                // set the tempo
-                tempo = tempoMap.get(measure);
-            }
-        }
-        if(tempo<=0) {
-            return 500;
-        }
-        return 60000/tempo;
+    public synchronized int getPlaybackSpeed(int countsAhead) {
+        //the timeline of the drill being played back is built once, rather than on every count
+        DrillInfo drill = playbackDrill != null ? playbackDrill : drillInfo;
+        return drill.getTimeline().getCountLength(getCountTotal() + countsAhead);
     }
 
     /**
@@ -734,12 +1173,49 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void assignCommand(String rankName, CommandPair commandPair){
-        String errorMessage = drillInfo.getMoves().get(currentMove).addCommand(rankName, commandPair);
-        if (errorMessage.isEmpty()) {
-            updatePositions(rankName);
+        HashSet<String> rankNames = new HashSet<String>();
+        rankNames.add(rankName);
+        assignCommand(rankNames, commandPair);
+    }
+
+    /**
+     * Assigns the same command to several ranks in the current move, updating the later moves
+     * for all of them in one pass and refreshing the view once.  Displays an error message for
+     * any rank it could not add the command to.
+     *
+     * @param rankNames
+     *            - the ranks to add the command to
+     * @param commandPair
+     *            - the command and number of counts
+     */
+    @Override
+    public void assignCommand(HashSet<String> rankNames, CommandPair commandPair) {
+        HashSet<String> assignedRanks = new HashSet<String>();
+        StringBuilder errorMessages = new StringBuilder();
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(rankNames);
+        synchronized (drillInfo) {
+            Move move = drillInfo.getMoves().get(currentMove);
+            for (String rankName : rankNames) {
+                String errorMessage = move.addCommand(rankName, commandPair);
+                if (errorMessage.isEmpty()) {
+                    assignedRanks.add(rankName);
+                }
+                else {
+                    if (errorMessages.length() > 0) {
+                        errorMessages.append("\n");
+                    }
+                    errorMessages.append(errorMessage);
+                }
+            }
         }
-        else {
-            mainView.displayError(errorMessage);
+
+        if (!assignedRanks.isEmpty()) {
+            recordCommandEdit(oldCommands);
+            propagationWorker.submit(drillInfo, assignedRanks, currentMove+1);
+            refreshRanks(assignedRanks);
+        }
+        if (errorMessages.length() > 0) {
+            mainView.displayError(errorMessages.toString());
         }
     }
 
@@ -750,7 +1226,16 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void removeCommands(int[] commandIndices) {
-        HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(selectedRanks);
+        removeSelectedCommands(commandIndices);
+        recordCommandEdit(oldCommands);
+    }
+
+    /**
+     * Does the work of {@link #removeCommands(int[])}, which records the edit once this returns
+     */
+    private void removeSelectedCommands(int[] commandIndices) {
+        Map<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
         for (int indx : commandIndices) {
@@ -780,7 +1265,10 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 }
             }
 
-            String errorMessage = drillInfo.getMoves().get(currentMove).removeCommands(rankName, rankIndices);
+            String errorMessage;
+            synchronized (drillInfo) {
+                errorMessage = drillInfo.getMoves().get(currentMove).removeCommands(rankName, rankIndices);
+            }
             if (errorMessage.isEmpty()) {
                 updatePositions(rankName);
             }
@@ -798,7 +1286,16 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void renameCommand(int index, String name) {
-        HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(selectedRanks);
+        renameSelectedCommand(index, name);
+        recordCommandEdit(oldCommands);
+    }
+
+    /**
+     * Does the work of {@link #renameCommand(int, String)}, which records the edit once this returns
+     */
+    private void renameSelectedCommand(int index, String name) {
+        Map<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
         if (sharedCommands.get(index).getCommand() == 32) {
@@ -822,7 +1319,10 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 countsToIndex -= allCommands.get(rankName).get(i).getCounts();
             }
 
-            String errorMessage = drillInfo.getMoves().get(currentMove).renameCommand(rankName, rankIndex, name);
+            String errorMessage;
+            synchronized (drillInfo) {
+                errorMessage = drillInfo.getMoves().get(currentMove).renameCommand(rankName, rankIndex, name);
+            }
             if (errorMessage.isEmpty()) {
                 mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
             }
@@ -840,7 +1340,16 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void moveCommandsUp(int[] commandIndices) {
-        HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(selectedRanks);
+        moveSelectedCommandsUp(commandIndices);
+        recordCommandEdit(oldCommands);
+    }
+
+    /**
+     * Does the work of {@link #moveCommandsUp(int[])}, which records the edit once this returns
+     */
+    private void moveSelectedCommandsUp(int[] commandIndices) {
+        Map<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
         for (int indx : commandIndices) {
@@ -869,9 +1378,12 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 }
             }
 
-            String errorMessage = drillInfo.getMoves().get(currentMove).moveCommandsUp(rankName, rankIndices);
+            String errorMessage;
+            synchronized (drillInfo) {
+                errorMessage = drillInfo.getMoves().get(currentMove).moveCommandsUp(rankName, rankIndices);
+            }
             if (errorMessage.isEmpty()) {
-                mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
+                updatePositions(rankName);
             }
             else {
                 mainView.displayError(errorMessage);
@@ -887,7 +1399,16 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void moveCommandsDown(int[] commandIndices) {
-        HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(selectedRanks);
+        moveSelectedCommandsDown(commandIndices);
+        recordCommandEdit(oldCommands);
+    }
+
+    /**
+     * Does the work of {@link #moveCommandsDown(int[])}, which records the edit once this returns
+     */
+    private void moveSelectedCommandsDown(int[] commandIndices) {
+        Map<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
         for (int indx : commandIndices) {
@@ -916,9 +1437,12 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 }
             }
 
-            String errorMessage = drillInfo.getMoves().get(currentMove).moveCommandsDown(rankName, rankIndices);
+            String errorMessage;
+            synchronized (drillInfo) {
+                errorMessage = drillInfo.getMoves().get(currentMove).moveCommandsDown(rankName, rankIndices);
+            }
             if (errorMessage.isEmpty()) {
-                mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
+                updatePositions(rankName);
             }
             else {
                 mainView.displayError(errorMessage);
@@ -934,7 +1458,16 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void mergeCommands(int[] commandIndices) {
-        HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(selectedRanks);
+        mergeSelectedCommands(commandIndices);
+        recordCommandEdit(oldCommands);
+    }
+
+    /**
+     * Does the work of {@link #mergeCommands(int[])}, which records the edit once this returns
+     */
+    private void mergeSelectedCommands(int[] commandIndices) {
+        Map<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
         for (int indx : commandIndices) {
@@ -968,9 +1501,12 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 }
             }
 
-            String errorMessage = drillInfo.getMoves().get(currentMove).mergeCommands(rankName, rankIndices);
+            String errorMessage;
+            synchronized (drillInfo) {
+                errorMessage = drillInfo.getMoves().get(currentMove).mergeCommands(rankName, rankIndices);
+            }
             if (errorMessage.isEmpty()) {
-                mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
+                updatePositions(rankName);
             }
             else {
                 mainView.displayError(errorMessage);
@@ -988,12 +1524,22 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public String splitCommand(int index, int count) {
+        HashMap<String, ArrayList<CommandPair>> oldCommands = shareCommands(selectedRanks);
+        String errorMessage = splitSelectedCommand(index, count);
+        recordCommandEdit(oldCommands);
+        return errorMessage;
+    }
+
+    /**
+     * Does the work of {@link #splitCommand(int, int)}, which records the edit once this returns
+     */
+    private String splitSelectedCommand(int index, int count) {
         // TODO: this check should really be included int he splitCommand function, not here, but I
         // dont want it to close
         // the window if this check is done, but i do want it to close it for others...
         // this will need to be re coded
 
-        HashMap<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
+        Map<String,ArrayList<CommandPair>> allCommands = drillInfo.getMoves().get(currentMove).getCommands();
         ArrayList<CommandPair> sharedCommands = getSharedCommands(selectedRanks, allCommands);
 
         if (count >= sharedCommands.get(index).getCounts()) {
@@ -1026,9 +1572,12 @@ public class MainController implements ControllerInterface, SynchronizedControll
                 countsToIndex -= allCommands.get(rankName).get(i).getCounts();
             }
 
-            String errorMessage = drillInfo.getMoves().get(currentMove).splitCommand(rankName, rankIndex, count);
+            String errorMessage;
+            synchronized (drillInfo) {
+                errorMessage = drillInfo.getMoves().get(currentMove).splitCommand(rankName, rankIndex, count);
+            }
             if (errorMessage.isEmpty()) {
-                mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks,drillInfo.getMoves().get(currentMove).getCommands()));
+                updatePositions(rankName);
             }
             else {
                 mainView.displayError(errorMessage);
@@ -1049,8 +1598,9 @@ public class MainController implements ControllerInterface, SynchronizedControll
         }
         else {
             PDFGenerator pdfGenerator = new PDFGenerator();
+            DrillInfo snapshot = snapshotDrill();
             try {
-                pdfGenerator.createPDF(drillInfo, file);
+                pdfGenerator.createPDF(snapshot, file);
             } catch (COSVisitorException e) {
                 // TODO Auto-generated catch block
                 mainView.displayError("COSVisitorException occurred in generating PDF");
@@ -1080,7 +1630,155 @@ public class MainController implements ControllerInterface, SynchronizedControll
      */
     @Override
     public void setMoveComment(String comment) {
-        drillInfo.getMoves().get(currentMove).setComments(comment);
+        String oldComment;
+        synchronized (drillInfo) {
+            oldComment = drillInfo.getMoves().get(currentMove).getComments();
+        }
+        if (!oldComment.equals(comment)) {
+            recordEdit(new CommentEdit(currentMove, oldComment, comment));
+        }
+        setComment(currentMove, comment);
+    }
+
+    /**
+     * Sets the comment of a move while holding the drill's lock
+     *
+     * @param moveNumber - the move to set the comment of
+     * @param comment - the new comment
+     */
+    private void setComment(int moveNumber, String comment) {
+        synchronized (drillInfo) {
+            drillInfo.getMoves().get(moveNumber).setComments(comment);
+        }
+    }
+
+    /**
+     * Undoes the most recent edit, carrying the change through the later moves the same way
+     * the edit itself was
+     */
+    @Override
+    public void undo() {
+        if (isPlaybackRunning()) {
+            return;
+        }
+        int numberOfMoves = drillInfo.getMoves().size();
+        int editedMove = editHistory.undo();
+        if (editedMove >= 0) {
+            showEditedMove(editedMove, numberOfMoves);
+        }
+    }
+
+    /**
+     * Redoes the most recently undone edit
+     */
+    @Override
+    public void redo() {
+        if (isPlaybackRunning()) {
+            return;
+        }
+        int numberOfMoves = drillInfo.getMoves().size();
+        int editedMove = editHistory.redo();
+        if (editedMove >= 0) {
+            showEditedMove(editedMove, numberOfMoves);
+        }
+    }
+
+    /**
+     * Sets the most edits that can be undone, forgetting the oldest edits if there are now too many
+     *
+     * @param maxEdits - the new limit on the number of edits
+     */
+    @Override
+    public void setUndoLimit(int maxEdits) {
+        editHistory.setMaxEdits(maxEdits);
+    }
+
+    /**
+     * Records an edit that was just made.  The field goes back to showing the end of the current
+     * move, which is where the edit was made.
+     *
+     * @param edit - the edit that was made
+     */
+    private void recordEdit(EditHistory.Edit edit) {
+        seekCount = -1;
+        editHistory.record(edit);
+    }
+
+    /**
+     * Switches to the move an edit was undone or redone in and refreshes the view
+     *
+     * @param editedMove - the move the edit was made in
+     * @param oldNumberOfMoves - the number of moves before the edit was undone or redone
+     */
+    private void showEditedMove(int editedMove, int oldNumberOfMoves) {
+        int numberOfMoves = drillInfo.getMoves().size();
+        currentMove = Math.max(0, Math.min(editedMove, numberOfMoves - 1));
+        seekCount = -1;
+
+        //ranks the edit took away can no longer be selected
+        selectedRanks.retainAll(drillInfo.getMoves().get(0).getStartPositions().keySet());
+        mainView.updateSelectedRank(selectedRanks, getSharedCommands(selectedRanks, drillInfo.getMoves().get(currentMove).getCommands()));
+        if (numberOfMoves != oldNumberOfMoves) {
+            mainView.updateViewWithMoves(numberOfMoves, currentMove, drillInfo.getMoves().get(currentMove).getCounts());
+        }
+        else {
+            mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
+        }
+    }
+
+    /**
+     * Returns the current command lists of the given ranks in the current move, which the move
+     * leaves alone from then on, to record what an edit of the commands changes
+     *
+     * @param rankNames - the ranks about to be edited
+     * @return - a map of rank name to command list
+     */
+    private HashMap<String, ArrayList<CommandPair>> shareCommands(Collection<String> rankNames) {
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+        synchronized (drillInfo) {
+            Move move = drillInfo.getMoves().get(currentMove);
+            for (String rankName : rankNames) {
+                ArrayList<CommandPair> commands = move.shareCommands(rankName);
+                if (commands != null) {
+                    rankCommands.put(rankName, commands);
+                }
+            }
+        }
+        return rankCommands;
+    }
+
+    /**
+     * Records an edit of the commands in the current move, keeping only the ranks whose
+     * command lists were actually changed
+     *
+     * @param oldCommands - the command lists from before the edit, from shareCommands
+     */
+    private void recordCommandEdit(HashMap<String, ArrayList<CommandPair>> oldCommands) {
+        HashMap<String, ArrayList<CommandPair>> newCommands = shareCommands(oldCommands.keySet());
+        HashMap<String, ArrayList<CommandPair>> changedCommands = new HashMap<String, ArrayList<CommandPair>>();
+        for (String rankName : newCommands.keySet()) {
+            //an edited list is always a new list, since the old one was shared
+            if (newCommands.get(rankName) != oldCommands.get(rankName)) {
+                changedCommands.put(rankName, oldCommands.get(rankName));
+            }
+        }
+        newCommands.keySet().retainAll(changedCommands.keySet());
+        if (!changedCommands.isEmpty()) {
+            recordEdit(new CommandEdit(currentMove, changedCommands, newCommands));
+        }
+    }
+
+    /**
+     * Queues every rank to be propagated from the given move, after moves were added or removed
+     *
+     * @param firstMove - the first move whose start positions may be out of date
+     */
+    private void propagateAllRanks(int firstMove) {
+        ArrayList<String> rankNames;
+        synchronized (drillInfo) {
+            rankNames = new ArrayList<String>(drillInfo.getMoves().get(0).getStartPositions().keySet());
+        }
+        propagationWorker.submit(drillInfo, rankNames, firstMove);
     }
 
     /**
@@ -1114,6 +1812,321 @@ public class MainController implements ControllerInterface, SynchronizedControll
         transientRanks.put(TEMP_DRAWING_RANK, temporaryDrawingRank);
         mainView.updateView(currentMove, drillInfo.getMoves().get(currentMove).getCounts());
     }
-}
 
+    /**
+     * An edit of the command lists of some ranks in one move
+     */
+    private class CommandEdit extends EditHistory.Edit {
+
+        private final int moveNumber;
+
+        // The command lists of the edited ranks before and after the edit, which are never changed
+        private final HashMap<String, ArrayList<CommandPair>> oldCommands;
+        private final HashMap<String, ArrayList<CommandPair>> newCommands;
+
+        CommandEdit(int moveNumber, HashMap<String, ArrayList<CommandPair>> oldCommands,
+                HashMap<String, ArrayList<CommandPair>> newCommands) {
+            this.moveNumber = moveNumber;
+            this.oldCommands = oldCommands;
+            this.newCommands = newCommands;
+        }
+
+        @Override
+        int undo() {
+            return setCommands(oldCommands);
+        }
+
+        @Override
+        int redo() {
+            return setCommands(newCommands);
+        }
+
+        private int setCommands(HashMap<String, ArrayList<CommandPair>> rankCommands) {
+            synchronized (drillInfo) {
+                Move move = drillInfo.getMoves().get(moveNumber);
+                for (String rankName : rankCommands.keySet()) {
+                    move.restoreCommands(rankName, rankCommands.get(rankName));
+                }
+            }
+            propagationWorker.submit(drillInfo, rankCommands.keySet(), moveNumber + 1);
+            return moveNumber;
+        }
+    }
+
+    /**
+     * An edit of the starting positions of some ranks, which is where they are in the first move
+     */
+    private class PositionEdit extends EditHistory.Edit {
+
+        // The positions of the edited ranks before and after the edit, which are frozen
+        private final HashMap<String, RankPosition> oldPositions = new HashMap<String, RankPosition>();
+        private final HashMap<String, RankPosition> newPositions = new HashMap<String, RankPosition>();
+
+        // The ranks that were being moved together when the edit was made
+        private final HashSet<String> movedRanks;
+
+        /**
+         * @param rankName - the rank that was moved
+         * @param oldPosition - its position before the edit
+         * @param newPosition - its position after the edit
+         * @param movedRanks - every rank being moved along with it, such as the whole selection during a drag
+         */
+        PositionEdit(String rankName, RankPosition oldPosition, RankPosition newPosition, HashSet<String> movedRanks) {
+            oldPositions.put(rankName, oldPosition);
+            newPositions.put(rankName, newPosition);
+            this.movedRanks = movedRanks;
+        }
+
+        @Override
+        int undo() {
+            return setPositions(oldPositions);
+        }
+
+        @Override
+        int redo() {
+            return setPositions(newPositions);
+        }
+
+        /**
+         * Merges the positions of a drag, which arrive one rank and one mouse event at a time.  Only
+         * edits that move the same set of ranks are merged, so moving some other ranks straight
+         * afterwards is undone by itself.
+         */
+        @Override
+        boolean merge(EditHistory.Edit next) {
+            if (!(next instanceof PositionEdit) || !((PositionEdit) next).movedRanks.equals(movedRanks)) {
+                return false;
+            }
+            PositionEdit nextEdit = (PositionEdit) next;
+            for (String rankName : nextEdit.newPositions.keySet()) {
+                if (!oldPositions.containsKey(rankName)) {
+                    oldPositions.put(rankName, nextEdit.oldPositions.get(rankName));
+                }
+                newPositions.put(rankName, nextEdit.newPositions.get(rankName));
+            }
+            return true;
+        }
+
+        private int setPositions(HashMap<String, RankPosition> positions) {
+            synchronized (drillInfo) {
+                Move firstMove = drillInfo.getMoves().get(0);
+                for (String rankName : positions.keySet()) {
+                    firstMove.updatePositions(rankName, positions.get(rankName));
+                }
+            }
+            propagationWorker.submit(drillInfo, positions.keySet(), 1);
+            return 0;
+        }
+    }
+
+    /**
+     * The adding or deleting of ranks, which keeps what the ranks hold in every move so they can
+     * be put back exactly as they were
+     */
+    private class RankEdit extends EditHistory.Edit {
+
+        // True if the ranks were deleted, false if they were added
+        private final boolean deleted;
+
+        private final ArrayList<String> rankNames = new ArrayList<String>();
+
+        // The positions and commands of each rank in each move, by rank and then by move number
+        private final ArrayList<ArrayList<RankPosition>> startPositions = new ArrayList<ArrayList<RankPosition>>();
+        private final ArrayList<ArrayList<RankPosition>> endPositions = new ArrayList<ArrayList<RankPosition>>();
+        private final ArrayList<ArrayList<ArrayList<CommandPair>>> commands = new ArrayList<ArrayList<ArrayList<CommandPair>>>();
+
+        /**
+         * Records the ranks as they are in every move.  Must be called while holding the drill's lock.
+         *
+         * @param rankNames - the ranks that were added or are about to be deleted, ignoring any that do not exist
+         * @param deleted - true if the ranks are being deleted, false if they were added
+         */
+        RankEdit(Collection<String> rankNames, boolean deleted) {
+            this.deleted = deleted;
+            for (String rankName : rankNames) {
+                if (!drillInfo.doesRankExist(rankName)) {
+                    continue;
+                }
+                ArrayList<RankPosition> rankStarts = new ArrayList<RankPosition>();
+                ArrayList<RankPosition> rankEnds = new ArrayList<RankPosition>();
+                ArrayList<ArrayList<CommandPair>> rankCommands = new ArrayList<ArrayList<CommandPair>>();
+                for (Move move : drillInfo.getMoves()) {
+                    rankStarts.add(move.getStartPositions().get(rankName));
+                    rankEnds.add(move.getEndPosition(rankName));
+                    rankCommands.add(move.shareCommands(rankName));
+                }
+                this.rankNames.add(rankName);
+                startPositions.add(rankStarts);
+                endPositions.add(rankEnds);
+                commands.add(rankCommands);
+            }
+        }
+
+        boolean isEmpty() {
+            return rankNames.isEmpty();
+        }
+
+        @Override
+        int undo() {
+            if (deleted) {
+                restoreRanks();
+            }
+            else {
+                deleteRanks();
+            }
+            return currentMove;
+        }
+
+        @Override
+        int redo() {
+            if (deleted) {
+                deleteRanks();
+            }
+            else {
+                restoreRanks();
+            }
+            return currentMove;
+        }
+
+        private void deleteRanks() {
+            synchronized (drillInfo) {
+                for (String rankName : rankNames) {
+                    drillInfo.deleteRank(rankName);
+                }
+            }
+        }
+
+        private void restoreRanks() {
+            synchronized (drillInfo) {
+                for (int rank = 0; rank < rankNames.size(); rank++) {
+                    for (int i = 0; i < drillInfo.getMoves().size(); i++) {
+                        drillInfo.getMoves().get(i).restoreRank(rankNames.get(rank), startPositions.get(rank).get(i),
+                                endPositions.get(rank).get(i), commands.get(rank).get(i));
+                    }
+                }
+            }
+            //the ranks may have been deleted while an earlier edit was still being propagated
+            propagationWorker.submit(drillInfo, rankNames, 1);
+        }
+    }
+
+    /**
+     * The adding or deleting of a move, which keeps the move itself so it can be put back
+     */
+    private class MoveEdit extends EditHistory.Edit {
+
+        private final int moveNumber;
+        private final Move move;
+
+        // True if the move was deleted, false if it was added
+        private final boolean deleted;
+
+        MoveEdit(int moveNumber, Move move, boolean deleted) {
+            this.moveNumber = moveNumber;
+            this.move = move;
+            this.deleted = deleted;
+        }
+
+        @Override
+        int undo() {
+            return deleted ? insertMove() : removeMove();
+        }
+
+        @Override
+        int redo() {
+            return deleted ? removeMove() : insertMove();
+        }
+
+        private int insertMove() {
+            propagationWorker.finish();
+            synchronized (drillInfo) {
+                drillInfo.insertMove(moveNumber, move);
+            }
+            //the move after it was joined up to the move before it while it was gone
+            propagateAllRanks(moveNumber);
+            propagateAllRanks(moveNumber + 1);
+            return moveNumber;
+        }
+
+        private int removeMove() {
+            propagationWorker.finish();
+            synchronized (drillInfo) {
+                drillInfo.deleteMove(moveNumber);
+            }
+            propagateAllRanks(moveNumber);
+            return moveNumber - 1;
+        }
+    }
+
+    /**
+     * An edit of the song constants
+     */
+    private class SongEdit extends EditHistory.Edit {
+
+        private final HashMap<Integer, Integer> oldTempoHashMap;
+        private final HashMap<Integer, Integer> oldCountsHashMap;
+        private final String oldSongName;
+        private final HashMap<Integer, Integer> newTempoHashMap;
+        private final HashMap<Integer, Integer> newCountsHashMap;
+        private final String newSongName;
+
+        SongEdit(HashMap<Integer, Integer> oldTempoHashMap, HashMap<Integer, Integer> oldCountsHashMap, String oldSongName,
+                HashMap<Integer, Integer> newTempoHashMap, HashMap<Integer, Integer> newCountsHashMap, String newSongName) {
+            this.oldTempoHashMap = oldTempoHashMap;
+            this.oldCountsHashMap = oldCountsHashMap;
+            this.oldSongName = oldSongName;
+            this.newTempoHashMap = newTempoHashMap;
+            this.newCountsHashMap = newCountsHashMap;
+            this.newSongName = newSongName;
+        }
+
+        @Override
+        int undo() {
+            updateSongConstants(oldTempoHashMap, oldCountsHashMap, oldSongName);
+            return currentMove;
+        }
 
+        @Override
+        int redo() {
+            updateSongConstants(newTempoHashMap, newCountsHashMap, newSongName);
+            return currentMove;
+        }
+    }
+
+    /**
+     * An edit of the comment of a move
+     */
+    private class CommentEdit extends EditHistory.Edit {
+
+        private final int moveNumber;
+        private final String oldComment;
+        private String newComment;
+
+        CommentEdit(int moveNumber, String oldComment, String newComment) {
+            this.moveNumber = moveNumber;
+            this.oldComment = oldComment;
+            this.newComment = newComment;
+        }
+
+        @Override
+        int undo() {
+            setComment(moveNumber, oldComment);
+            return moveNumber;
+        }
+
+        @Override
+        int redo() {
+            setComment(moveNumber, newComment);
+            return moveNumber;
+        }
+
+        @Override
+        boolean merge(EditHistory.Edit next) {
+            if (!(next instanceof CommentEdit) || ((CommentEdit) next).moveNumber != moveNumber) {
+                return false;
+            }
+            newComment = ((CommentEdit) next).newComment;
+            return true;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.bigredbands.mb.models.CommandPair;
 import org.bigredbands.mb.models.DrillInfo;
 import org.bigredbands.mb.models.Move;
 import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.SongTimeline;
 import org.bigredbands.mb.views.PdfImage;
 import org.bigredbands.mb.views.ProjectView;
 import org.bigredbands.mb.views.Wizard;
@@ -66,6 +67,7 @@ public class PDFGenerator {
         int moveNumber = 0; // move number
         int begMeasure = 0; // beginning measure of move
         int endMeasure = 0; // ending measure of move
+        SongTimeline timeline = drillInfo.getTimeline();
 
         // iterating through each move in the drill
         for (Move move : drillInfo.getMoves()) {
@@ -93,7 +95,7 @@ public class PDFGenerator {
             float scalefactor = (float) (666.667 / 120.0);
 
             PdfImage image = new PdfImage(scalefactor, dim,
-                    move.getEndPositions());
+                    new HashMap<String, RankPosition>(move.getEndPositions()));
             image.setPreferredSize(dim);
             image.setSize(dim);
             BufferedImage bi = createImage(image);
@@ -128,15 +130,14 @@ public class PDFGenerator {
             // print Measures
             contentStream.moveTextPositionByAmount((pageWidth / 2) - 47,
                     pageHeight - bufferTop);
-            // we have a map of measure number to count per measure
-            // currently assumes 4 counts per measure
-            // TODO: Make measures adjust with changes in count per measure
-            begMeasure = endMeasure;
-            endMeasure = begMeasure + move.getCounts() / 4;
-            if (begMeasure != endMeasure) {
-                contentStream.drawString("Measures:  " + (begMeasure + 1)
+            // the timeline follows the changes in counts per measure
+            if (move.getCounts() > 0) {
+                begMeasure = timeline.getMeasure(timeline.getMoveStart(moveNumber) + 1);
+                endMeasure = timeline.getMeasure(timeline.getMoveStart(moveNumber) + move.getCounts());
+                contentStream.drawString("Measures:  " + begMeasure
                         + " - " + endMeasure);
             } else {
+                begMeasure = endMeasure;
                 contentStream.drawString("Measures:  " + begMeasure + " - "
                         + endMeasure);
             }
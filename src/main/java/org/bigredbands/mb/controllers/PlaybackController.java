@@ -1,37 +1,168 @@
 package org.bigredbands.mb.controllers;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  *
  * Used for controlling playback of drill.
  *
+ * Each count is scheduled at an absolute time: the time playback started plus the lengths of
+ * every count before it, as given by the tempo.  Time spent evaluating and drawing a count is
+ * therefore not added on to the next one, so playback stays with the metronome however long it
+ * runs.  If playback falls behind, it jumps straight to the latest count that is due, skipping
+ * the counts in between rather than playing them all at once to catch up.
+ *
  */
 public class PlaybackController implements Runnable {
 
+    /**
+     * The time playback is scheduled against
+     */
+    interface Clock {
+
+        /**
+         * Returns the current time in nanoseconds, as from System.nanoTime
+         */
+        long nanoTime();
+
+        /**
+         * Waits for up to the given time, possibly returning early
+         *
+         * @param nanos - the longest time to wait, in nanoseconds
+         */
+        void parkNanos(long nanos);
+    }
+
+    // The system's clock, which parking makes accurate to well under a millisecond, where
+    // Thread.sleep rounds up to the next one
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void parkNanos(long nanos) {
+            LockSupport.parkNanos(nanos);
+        }
+    };
+
     private SynchronizedController controller;
 
+    private final Clock clock;
+
+    // How late the most recent count was reached compared to its scheduled time, in nanoseconds.
+    // Since counts are scheduled from the start of playback, this is the drift accumulated so far.
+    private volatile long drift = 0;
+
+    // The latest any count has been reached, in nanoseconds
+    private volatile long maxDrift = 0;
+
+    // The number of counts jumped over because playback fell behind
+    private volatile int skippedCounts = 0;
+
     /**
      * Constructor that sets SynchonizedController.
      *
      * @param controller -
      */
     public PlaybackController(SynchronizedController controller) {
-        this.controller = controller;
+        this(controller, SYSTEM_CLOCK);
     }
 
     /**
+     * Constructor that sets the clock playback is scheduled against, for testing
      *
+     * @param controller - told about each count reached
+     * @param clock - the clock to schedule the counts with
+     */
+    PlaybackController(SynchronizedController controller, Clock clock) {
+        this.controller = controller;
+        this.clock = clock;
+    }
+
+    /**
+     * Reaches each count at its scheduled time until playback stops
      */
     @Override
     public void run() {
+        long deadline = clock.nanoTime();
         while (controller.isPlaybackRunning()) {
+            deadline += getCountLength(0);
             try {
-                Thread.sleep(controller.getPlaybackSpeed());
+                waitUntil(deadline);
             } catch (InterruptedException e) {
                 // We've been interrupted: no more messages.
                 return;
             }
-            controller.incrementPlaybackCount();
+
+            //any later counts that are already due are jumped over to the latest of them
+            long now = clock.nanoTime();
+            int counts = 1;
+            long nextDeadline = deadline + getCountLength(counts);
+            while (nextDeadline <= now) {
+                deadline = nextDeadline;
+                counts++;
+                nextDeadline += getCountLength(counts);
+            }
+
+            long lateness = now - deadline;
+            drift = lateness;
+            maxDrift = Math.max(maxDrift, lateness);
+            skippedCounts += counts - 1;
+            controller.incrementPlaybackCount(counts);
+        }
+    }
+
+    /**
+     * Gets the length of a count from the controller
+     *
+     * @param countsAhead - how many counts after the current count the count is
+     * @return - the length of the count in nanoseconds, which is at least a millisecond
+     */
+    private long getCountLength(int countsAhead) {
+        return Math.max(controller.getPlaybackSpeed(countsAhead), 1) * 1000000L;
+    }
+
+    /**
+     * Sleeps until the given time, or returns straight away if it has already passed
+     *
+     * @param deadline - the time to wake up at, from the clock
+     */
+    private void waitUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - clock.nanoTime();
+        while (remaining > 0) {
+            clock.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = deadline - clock.nanoTime();
         }
     }
 
+    /**
+     * Returns how far playback has drifted behind the tempo, which is how late the most recent
+     * count was reached
+     *
+     * @return - the drift in nanoseconds
+     */
+    public long getDrift() {
+        return drift;
+    }
+
+    /**
+     * Returns the latest any count has been reached since playback started
+     *
+     * @return - the largest drift in nanoseconds
+     */
+    public long getMaxDrift() {
+        return maxDrift;
+    }
+
+    /**
+     * Returns the number of counts that were jumped over because playback fell behind
+     */
+    public int getSkippedCounts() {
+        return skippedCounts;
+    }
 }
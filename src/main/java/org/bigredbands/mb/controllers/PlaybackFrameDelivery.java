@@ -0,0 +1,97 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import org.bigredbands.mb.views.ViewInterface;
+
+/**
+ *
+ * Hands the frames reached by the playback thread over to the Swing event thread to be drawn.
+ * Only the latest frame is kept: publishing a frame replaces any frame that has not been drawn
+ * yet, and at most one draw is waiting on the event thread at a time.  If drawing falls behind,
+ * the frames in between are dropped and counted rather than piling up, so the field is never
+ * more than one frame behind playback.
+ *
+ */
+public class PlaybackFrameDelivery {
+
+    /**
+     * The move and count of a frame of playback
+     */
+    private static class Frame {
+
+        private final int moveNumber;
+        private final int countNumber;
+
+        Frame(int moveNumber, int countNumber) {
+            this.moveNumber = moveNumber;
+            this.countNumber = countNumber;
+        }
+    }
+
+    private final ViewInterface view;
+
+    // The latest frame published, or null if it has been drawn
+    private final AtomicReference<Frame> latestFrame = new AtomicReference<Frame>();
+
+    // The number of frames replaced by a later frame before they were drawn
+    private final AtomicInteger droppedFrames = new AtomicInteger();
+
+    // Draws the latest frame on the event thread
+    private final Runnable drawLatestFrame = new Runnable() {
+        @Override
+        public void run() {
+            Frame frame = latestFrame.getAndSet(null);
+            if (frame != null) {
+                drawFrame(frame.moveNumber, frame.countNumber);
+            }
+        }
+    };
+
+    /**
+     * Creates the delivery for a view
+     *
+     * @param view - the view that draws the frames
+     */
+    public PlaybackFrameDelivery(ViewInterface view) {
+        this.view = view;
+    }
+
+    /**
+     * Publishes a frame to be drawn.  Can be called from any thread.
+     *
+     * @param moveNumber - the move number of the frame
+     * @param countNumber - the count number of the frame
+     */
+    public void publish(int moveNumber, int countNumber) {
+        //a draw is only scheduled if the last one has already picked up its frame
+        Frame undrawnFrame = latestFrame.getAndSet(new Frame(moveNumber, countNumber));
+        if (undrawnFrame == null) {
+            SwingUtilities.invokeLater(drawLatestFrame);
+        }
+        else {
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Draws a frame.  Called on the event thread.
+     *
+     * @param moveNumber - the move number of the frame
+     * @param countNumber - the count number of the frame
+     */
+    void drawFrame(int moveNumber, int countNumber) {
+        view.updateFootballField(moveNumber, countNumber);
+    }
+
+    /**
+     * Returns the number of frames that were dropped because a later frame was published before
+     * they were drawn
+     */
+    public int getDroppedFrames() {
+        return droppedFrames.get();
+    }
+}
@@ -0,0 +1,238 @@
+package org.bigredbands.mb.controllers;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.PositionBuffer;
+import org.bigredbands.mb.models.SongTimeline;
+
+/**
+ *
+ * Works out the positions of the ranks for the frames of playback ahead of time, on its own
+ * thread, so drawing the field during playback only has to pick up a frame that is already done.
+ * Playback is split into a fixed number of steps per count, and the frames of the next few counts
+ * are kept in a ring buffer.  Once the buffer is full the producer waits for the frames at the
+ * front to be drawn before working out more.  Each frame packs the positions of the ranks into a
+ * {@link PositionBuffer} that is written again for every lap of the ring, so working out a frame
+ * does not allocate a position for each rank.
+ *
+ * If a frame is wanted before it is ready, the newest frame that is ready is drawn instead, and
+ * the underrun is counted.  The frames are never worked out on the drawing thread, since the moves
+ * being played back keep the state of their ranks between counts for the producer.
+ *
+ */
+public class PlaybackFrameProducer implements Runnable {
+
+    // The number of frames worked out for each count
+    public static final int STEPS_PER_COUNT = 32;
+
+    // How many counts of frames are worked out ahead of the one being drawn
+    public static final int LOOKAHEAD_COUNTS = 4;
+
+    // The drill being played back, which has to be a snapshot
+    private final DrillInfo drill;
+
+    // Where each count of the drill falls in its moves
+    private final SongTimeline timeline;
+
+    // The count of the drill playback starts at, which is the end of the first move
+    private final int firstCount;
+
+    // The last step of playback
+    private final long lastStep;
+
+    /**
+     * A slot of the ring buffer, holding the positions of the ranks at one step
+     */
+    static class Frame {
+
+        // The rank in each slot of the positions
+        private String[] rankNames;
+
+        // The positions of the ranks, with room for at least every rank of the drill
+        private PositionBuffer positions;
+
+        /**
+         * Returns the names of the ranks, where index i is the rank stored in slot i of the positions
+         */
+        String[] getRankNames() {
+            return rankNames;
+        }
+
+        PositionBuffer getPositions() {
+            return positions;
+        }
+    }
+
+    // The frames that are ready, where step s is kept in slot s % frames.length
+    private final Frame[] frames;
+
+    // The order each move writes its ranks in, found the first time the move is played
+    private final String[][] rankOrders;
+
+    // The next step to work out, so the frames of the steps before it are in the buffer
+    private long nextStep;
+
+    // The latest step that has been drawn, whose frame has to be kept
+    private long drawnStep;
+
+    // The first step worked out
+    private final long firstStep;
+
+    // The number of frames wanted before they were ready
+    private int underruns = 0;
+
+    // True once playback has stopped
+    private boolean stopped = false;
+
+    /**
+     * Creates a producer for a drill
+     *
+     * @param drill - a snapshot of the drill to play back
+     */
+    public PlaybackFrameProducer(DrillInfo drill) {
+        this(drill, 0);
+    }
+
+    /**
+     * Creates a producer for a drill that starts partway through, such as after seeking
+     *
+     * @param drill - a snapshot of the drill to play back
+     * @param firstStep - the step to work out first, counting from the start of playback
+     */
+    public PlaybackFrameProducer(DrillInfo drill, long firstStep) {
+        this.drill = drill;
+        this.timeline = drill.getTimeline();
+        this.firstCount = timeline.getMoveStart(1);
+        this.lastStep = (long) (timeline.getTotalCounts() - firstCount) * STEPS_PER_COUNT;
+        this.frames = new Frame[LOOKAHEAD_COUNTS * STEPS_PER_COUNT];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame();
+        }
+        this.rankOrders = new String[drill.getMoves().size()][];
+        this.firstStep = firstStep;
+        this.nextStep = firstStep;
+        this.drawnStep = firstStep;
+    }
+
+    /**
+     * Works out frames until the last step of the drill or until playback stops
+     */
+    @Override
+    public void run() {
+        while (true) {
+            long step;
+            synchronized (this) {
+                //the buffer is full while the oldest frame in it is still to be drawn
+                while (!stopped && nextStep - drawnStep >= frames.length) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // We've been interrupted: no more frames.
+                        return;
+                    }
+                }
+                if (stopped || nextStep > lastStep) {
+                    return;
+                }
+                step = nextStep;
+            }
+
+            //the slot is not drawn again until the frame written into it now is ready
+            evaluate(step, frames[(int) (step % frames.length)]);
+            synchronized (this) {
+                nextStep++;
+            }
+        }
+    }
+
+    /**
+     * Works out the positions of the ranks at a step of playback
+     *
+     * @param step - the number of steps since the start of playback
+     * @param frame - the frame to write the positions into
+     */
+    private void evaluate(long step, Frame frame) {
+        int count = firstCount + (int) (step / STEPS_PER_COUNT);
+        int fraction = (int) (step % STEPS_PER_COUNT);
+
+        //partway through a count, the ranks are in the move that count belongs to
+        int moveNumber = 1;
+        if (fraction > 0) {
+            moveNumber = timeline.getMove(count + 1);
+        }
+        else if (count > firstCount) {
+            moveNumber = timeline.getMove(count);
+        }
+
+        Move move = drill.getMoves().get(moveNumber);
+        if (rankOrders[moveNumber] == null) {
+            rankOrders[moveNumber] = move.getRankOrder();
+        }
+        frame.rankNames = rankOrders[moveNumber];
+        if (frame.positions == null || frame.positions.getCapacity() < frame.rankNames.length) {
+            frame.positions = new PositionBuffer(frame.rankNames.length);
+        }
+        move.evaluate(count - timeline.getMoveStart(moveNumber) + fraction / (float) STEPS_PER_COUNT,
+                frame.positions);
+    }
+
+    /**
+     * Gets the frame for a step of playback, letting the producer drop the frames before it.  The
+     * frame is written over once a later frame is asked for, so it has to be read before then.
+     *
+     * @param step - the number of steps since the start of playback
+     * @return - the positions of the ranks, or null if no frame is ready yet
+     */
+    synchronized Frame getFrame(long step) {
+        step = Math.min(step, lastStep);
+        if (nextStep == firstStep) {
+            underruns++;
+            return null;
+        }
+
+        if (step >= nextStep) {
+            underruns++;
+            step = nextStep - 1;
+        }
+
+        //frames before the one drawn last may already be written over, and the frame handed out
+        //now is kept until a later one is asked for
+        step = Math.max(step, drawnStep);
+        if (step > drawnStep) {
+            drawnStep = step;
+            notifyAll();
+        }
+        return frames[(int) (step % frames.length)];
+    }
+
+    /**
+     * Stops working out frames
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of frames in the buffer from the one drawn last onwards, which drops
+     * towards zero when working out the frames cannot keep up with playback
+     */
+    public synchronized int getOccupancy() {
+        return (int) Math.max(nextStep - drawnStep, 0);
+    }
+
+    /**
+     * Returns the most frames the buffer holds
+     */
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    /**
+     * Returns the number of times a frame was wanted before it was ready, because working out the
+     * frames could not keep up with playback
+     */
+    public synchronized int getUnderruns() {
+        return underruns;
+    }
+}
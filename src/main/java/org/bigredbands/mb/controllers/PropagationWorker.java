@@ -0,0 +1,294 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.models.RankRegistry;
+
+/**
+ *
+ * Carries edited rank positions forward through the later moves of the drill on its own thread,
+ * so editing a long show does not block the user interface.  Every move it updates is published
+ * with Move.publishPositions, which the thumbnails read without locking.  An edit submitted while
+ * a propagation is running supersedes it: the unfinished work is merged with the new edit and
+ * started again from the earliest move either of them needs.  A merged rank is carried at least
+ * as far as the latest move any of its edits started from, since stopping at the first up to date
+ * move is only safe past every edit.
+ *
+ */
+public class PropagationWorker implements Runnable {
+
+    // How often the view is told about progress during a long propagation, in milliseconds
+    public static final int PROGRESS_INTERVAL = 100;
+
+    private SynchronizedController controller;
+
+    // The drill the pending work belongs to
+    private DrillInfo drillInfo = null;
+
+    // The moves each rank still has to be propagated through, by the rank's ID in the drill's
+    // registry, which unlike its name stays the same if the rank is renamed
+    private HashMap<Integer, PendingRank> pendingRanks = new HashMap<Integer, PendingRank>();
+
+    // Incremented by every submission, so a running propagation can tell it has been superseded
+    private long generation = 0;
+
+    // True while a propagation is running
+    private boolean running = false;
+
+    /**
+     * Constructor that sets SynchronizedController.
+     *
+     * @param controller - told whenever propagated positions are ready to be drawn
+     */
+    public PropagationWorker(SynchronizedController controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Queues a rank to be propagated from the given move to the end of the drill.  The caller must
+     * have already updated the move before it, and should hold no lock on the drill.
+     *
+     * @param drillInfo - the drill containing the rank
+     * @param rankName - the rank whose positions changed
+     * @param firstMove - the first move whose start position may be out of date
+     */
+    public void submit(DrillInfo drillInfo, String rankName, int firstMove) {
+        submit(drillInfo, Collections.singleton(rankName), firstMove);
+    }
+
+    /**
+     * Queues several ranks to be propagated together from the given move to the end of the drill,
+     * in a single pass over the moves
+     *
+     * @param drillInfo - the drill containing the ranks
+     * @param rankNames - the ranks whose positions changed
+     * @param firstMove - the first move whose start positions may be out of date
+     */
+    public void submit(DrillInfo drillInfo, Collection<String> rankNames, int firstMove) {
+        int[] rankIds = new int[rankNames.size()];
+        synchronized (drillInfo) {
+            RankRegistry rankRegistry = drillInfo.getRankRegistry();
+            int i = 0;
+            for (String rankName : rankNames) {
+                rankIds[i++] = rankRegistry.getId(rankName);
+            }
+        }
+        submit(drillInfo, rankIds, firstMove);
+    }
+
+    /**
+     * Queues ranks by their IDs in the drill's registry, ignoring names that were not registered
+     */
+    private synchronized void submit(DrillInfo drillInfo, int[] rankIds, int firstMove) {
+        if (this.drillInfo != drillInfo) {
+            //work on a drill that has since been closed is no longer needed
+            pendingRanks.clear();
+            this.drillInfo = drillInfo;
+        }
+        firstMove = Math.max(firstMove, 1);
+        for (int rankId : rankIds) {
+            if (rankId >= 0) {
+                queue(rankId, firstMove, firstMove);
+            }
+        }
+        generation++;
+        notifyAll();
+    }
+
+    /**
+     * Drops all pending work, such as when a different project is opened
+     */
+    public synchronized void cancel() {
+        pendingRanks.clear();
+        drillInfo = null;
+        generation++;
+    }
+
+    /**
+     * Waits until every submitted rank has been propagated.  Used before anything that reads
+     * every move, such as saving, exporting or playback, or changes which moves exist.
+     */
+    public synchronized void finish() {
+        while (running || !pendingRanks.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if there is no propagation running or waiting to run
+     */
+    public synchronized boolean isIdle() {
+        return !running && pendingRanks.isEmpty();
+    }
+
+    /**
+     *
+     */
+    @Override
+    public void run() {
+        while (true) {
+            DrillInfo drill;
+            HashMap<Integer, PendingRank> work;
+            long workGeneration;
+            synchronized (this) {
+                while (pendingRanks.isEmpty()) {
+                    running = false;
+                    notifyAll();
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // We've been interrupted: no more propagation.
+                        return;
+                    }
+                }
+                drill = drillInfo;
+                work = pendingRanks;
+                pendingRanks = new HashMap<Integer, PendingRank>();
+                workGeneration = generation;
+                running = true;
+            }
+
+            if (propagate(drill, work, workGeneration)) {
+                controller.positionsPropagated();
+            }
+        }
+    }
+
+    /**
+     * Propagates the ranks one move at a time, holding the lock on the drill only while a single
+     * move is updated.  A rank drops out of the work once it reaches a move that is already up to
+     * date and is past the last move it was submitted for.
+     *
+     * @param drill - the drill to update
+     * @param work - the moves each rank has to be propagated through, emptied as ranks finish
+     * @param workGeneration - the generation the work was taken at
+     * @return - true if the work was finished, false if it was superseded by a newer edit
+     */
+    private boolean propagate(DrillInfo drill, HashMap<Integer, PendingRank> work, long workGeneration) {
+        int moveNumber = Integer.MAX_VALUE;
+        for (PendingRank pendingRank : work.values()) {
+            moveNumber = Math.min(moveNumber, pendingRank.firstMove);
+        }
+
+        //the rank IDs are only meaningful once every move shares the drill's registry
+        synchronized (drill) {
+            drill.getRankRegistry();
+        }
+
+        long lastProgress = System.nanoTime();
+        while (!work.isEmpty()) {
+            synchronized (drill) {
+                ArrayList<Move> moves = drill.getMoves();
+                if (moveNumber >= moves.size()) {
+                    break;
+                }
+                Move previousMove = moves.get(moveNumber-1);
+                Move move = moves.get(moveNumber);
+
+                boolean updated = false;
+                Iterator<Map.Entry<Integer, PendingRank>> iterator = work.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Integer, PendingRank> entry = iterator.next();
+                    if (entry.getValue().firstMove > moveNumber) {
+                        continue;
+                    }
+                    int rankId = entry.getKey();
+                    RankPosition previousEndPos = previousMove.getEndPosition(rankId);
+                    if (previousEndPos == null) {
+                        //the rank was deleted
+                        iterator.remove();
+                        continue;
+                    }
+                    if (move.isStartUpToDate(rankId, previousEndPos)) {
+                        //a later edit may still have left the moves after this one out of date
+                        if (moveNumber >= entry.getValue().lastMove) {
+                            iterator.remove();
+                        }
+                        continue;
+                    }
+                    move.updatePositions(rankId, previousEndPos);
+                    updated = true;
+                }
+                if (updated) {
+                    move.publishPositions();
+                }
+            }
+            moveNumber++;
+
+            if (requeueIfSuperseded(drill, work, workGeneration, moveNumber)) {
+                return false;
+            }
+            if (System.nanoTime() - lastProgress > PROGRESS_INTERVAL * 1000000L) {
+                controller.positionsPropagated();
+                lastProgress = System.nanoTime();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * If a newer edit has been submitted, puts the unfinished work back with it so both are
+     * propagated together
+     *
+     * @param nextMove - the first move the unfinished work has not reached yet
+     * @return - true if the work was put back
+     */
+    private synchronized boolean requeueIfSuperseded(DrillInfo drill, HashMap<Integer, PendingRank> work,
+            long workGeneration, int nextMove) {
+        if (generation == workGeneration) {
+            return false;
+        }
+        if (drillInfo == drill) {
+            for (Map.Entry<Integer, PendingRank> entry : work.entrySet()) {
+                PendingRank pendingRank = entry.getValue();
+                queue(entry.getKey(), Math.max(pendingRank.firstMove, nextMove), pendingRank.lastMove);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a rank to the pending work, widening the range of moves if it is already pending
+     */
+    private void queue(int rankId, int firstMove, int lastMove) {
+        PendingRank pendingRank = pendingRanks.get(rankId);
+        if (pendingRank == null) {
+            pendingRanks.put(rankId, new PendingRank(firstMove, lastMove));
+        }
+        else {
+            pendingRank.firstMove = Math.min(pendingRank.firstMove, firstMove);
+            pendingRank.lastMove = Math.max(pendingRank.lastMove, lastMove);
+        }
+    }
+
+    /**
+     * The range of moves a rank still has to be propagated through
+     */
+    private static class PendingRank {
+
+        // The first move whose start position may be out of date
+        private int firstMove;
+
+        // The latest move an edit to the rank started propagating from.  Propagation cannot stop
+        // before reaching it, even at a move that is already up to date.
+        private int lastMove;
+
+        PendingRank(int firstMove, int lastMove) {
+            this.firstMove = firstMove;
+            this.lastMove = lastMove;
+        }
+    }
+}
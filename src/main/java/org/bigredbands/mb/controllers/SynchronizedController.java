@@ -5,9 +5,12 @@ import java.util.HashSet;
 public interface SynchronizedController {
 
     /**
-     * Increments the playback count showing the next step to the user
+     * Moves playback on to a later count and shows it to the user
+     *
+     * @param counts - the number of counts to move on, which is more than one if playback fell
+     * behind and jumped over the counts in between
      */
-    public void incrementPlaybackCount();
+    public void incrementPlaybackCount(int counts);
 
     /**
      * Checks if playback is currently running
@@ -19,9 +22,15 @@ public interface SynchronizedController {
     /**
      * Gets the speed at which the playback is updated
      *
-     * @return
+     * @param countsAhead - how many counts after the current count to get the speed of
+     * @return - the length of the count in milliseconds
+     */
+    public int getPlaybackSpeed(int countsAhead);
+
+    /**
+     * Called from the propagation thread when propagated positions are ready to be drawn
      */
-    public int getPlaybackSpeed();
+    public void positionsPropagated();
 
 
 }
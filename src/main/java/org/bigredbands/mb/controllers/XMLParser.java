@@ -215,8 +215,8 @@ public class XMLParser {
         }
 
         move.getCommands().put(rankName, commands);
-        move.getStartPositions().put(rankName, startPosition);
-        move.getEndPositions().put(rankName, endPosition);
+        move.getStartPositions().put(rankName, startPosition.freeze());
+        move.getEndPositions().put(rankName, endPosition.freeze());
     }
 
     /**
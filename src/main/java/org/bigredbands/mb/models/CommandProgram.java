@@ -0,0 +1,453 @@
+package org.bigredbands.mb.models;
+
+import java.util.List;
+
+import org.bigredbands.mb.models.MarchingConstants.PART;
+
+/**
+ * The commands of one rank in a move, compiled so the position of the rank at any count
+ * can be found without replaying the commands before it.
+ *
+ * Each command becomes {@link #CODE_STRIDE} ints in a flat opcode stream (opcode, counts and
+ * up to three arguments) and {@link #CONSTANT_STRIDE} floats holding its per count step or
+ * turn.  Next to the stream the program keeps the count at which each command starts and a
+ * checkpoint, the position of the rank, at every command boundary.  A lookup is a binary search
+ * for the command in progress, then one small switch that runs part of that command from the
+ * checkpoint before it.  The geometry a gate turn, pinwheel or expansion measures before moving
+ * (length, reference angle, pivot) is the same for every count of the command, so it is measured
+ * once at compile time and cached with the command.
+ *
+ * Rigid commands are not composed into one transform per run of commands; every command gets
+ * its own checkpoint instead.  That gives the same single binary search, and running commands
+ * one at a time keeps the result identical to {@link Move#movePortionCounts}, which composing
+ * turns would not.  The exception is a rank that only marches, slides, marks time or halts,
+ * whose checkpoints are the start shifted by the summed steps, exactly as the move works out
+ * its end position.
+ */
+class CommandProgram {
+
+    // The kernel each opcode runs
+    static final int OP_NONE = 0;
+    static final int OP_STEP_Y = 1;
+    static final int OP_STEP_X = 2;
+    static final int OP_CURVE = 3;
+    static final int OP_FLATTEN_MID = 4;
+    static final int OP_FLATTEN_ENDS = 5;
+    static final int OP_GATE_TURN = 6;
+    static final int OP_PINWHEEL = 7;
+    static final int OP_EXPAND = 8;
+    static final int OP_DIRECT = 9;
+    static final int OP_CORNER = 10;
+
+    // The layout of one command in the code stream: opcode, counts, then the integer arguments
+    static final int CODE_STRIDE = 5;
+    private static final int OPCODE = 0;
+    private static final int COUNTS = 1;
+    private static final int ARG0 = 2;
+    private static final int ARG1 = 3;
+    private static final int ARG2 = 4;
+
+    // The layout of one command in the constant stream
+    static final int CONSTANT_STRIDE = 2;
+
+    // The layout of one command in the invariant stream
+    static final int INVARIANT_STRIDE = 4;
+
+    // The number of commands in the program
+    private final int length;
+
+    // The opcode stream and its per command constants
+    private final int[] code;
+    private final float[] constants;
+
+    // The geometry measured at the start of each command that depends on it: the length and
+    // reference angle of a gate turn, the pivot, half length and reference angle of a pinwheel,
+    // and the cosine and sine of the reference angle of an expansion
+    private final double[] invariants;
+
+    // The destination of each direct to point command, null for every other command
+    private final RankPosition[] destinations;
+
+    // The count at which each command starts, with one extra entry for the end of the last command
+    private final int[] starts;
+
+    // The position of the rank after each number of completed commands, from 0 to all of them
+    private final PositionBuffer checkpoints;
+
+    private CommandProgram(int[] code, float[] constants, RankPosition[] destinations, int[] starts, PositionBuffer checkpoints) {
+        this.length = destinations.length;
+        this.code = code;
+        this.constants = constants;
+        this.invariants = new double[destinations.length * INVARIANT_STRIDE];
+        this.destinations = destinations;
+        this.starts = starts;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Replays the commands once from the start position, recording the position at every command boundary
+     *
+     * @param startPosition - the position of the rank at the start of the move
+     * @param commandList - the commands of the rank, in order
+     * @return - the compiled program
+     */
+    static CommandProgram compile(RankPosition startPosition, List<CommandPair> commandList) {
+        int length = commandList.size();
+        int[] code = new int[length * CODE_STRIDE];
+        float[] constants = new float[length * CONSTANT_STRIDE];
+        RankPosition[] destinations = new RankPosition[length];
+        int[] starts = new int[length + 1];
+        boolean translationOnly = true;
+        for (int i = 0; i < length; i++) {
+            CommandPair command = commandList.get(i);
+            emit(command, code, i * CODE_STRIDE, constants, i * CONSTANT_STRIDE);
+            int opcode = code[i * CODE_STRIDE + OPCODE];
+            if (opcode == OP_DIRECT) {
+                destinations[i] = command.getDest();
+            }
+            translationOnly = translationOnly && (opcode == OP_STEP_X || opcode == OP_STEP_Y
+                    || command.getCommand() == CommandPair.MT || command.getCommand() == CommandPair.HALT);
+            starts[i+1] = starts[i] + command.getCounts();
+        }
+
+        CommandProgram program = new CommandProgram(code, constants, destinations, starts, new PositionBuffer(length + 1));
+        RankPosition position = new RankPosition(startPosition);
+        program.checkpoints.store(0, position);
+        if (translationOnly) {
+            program.storeTranslations(position);
+            return program;
+        }
+        for (int i = 0; i < length; i++) {
+            program.measureInvariants(i, position);
+            program.run(i, program.code[i * CODE_STRIDE + COUNTS], position);
+            program.checkpoints.store(i+1, position);
+        }
+        return program;
+    }
+
+    /**
+     * Records the checkpoints of commands that only march, slide, mark time or halt as the start
+     * position shifted by the steps taken so far.  The steps are summed in the same order as
+     * {@link Move#getEndPosition}, so the last checkpoint is the stored end position to the bit.
+     *
+     * @param position - a copy of the start position, which is overwritten
+     */
+    private void storeTranslations(RankPosition position) {
+        float deltaX = 0;
+        float deltaY = 0;
+        for (int i = 0; i < length; i++) {
+            int codeIndex = i * CODE_STRIDE;
+            float step = constants[i * CONSTANT_STRIDE] * code[codeIndex + COUNTS];
+            if (code[codeIndex + OPCODE] == OP_STEP_X) {
+                deltaX += step;
+            }
+            else if (code[codeIndex + OPCODE] == OP_STEP_Y) {
+                deltaY += step;
+            }
+
+            checkpoints.load(0, position);
+            if (deltaX != 0) {
+                position.incrementPointsXValue(deltaX);
+            }
+            if (deltaY != 0) {
+                position.incrementPointsYValue(deltaY);
+            }
+            checkpoints.store(i+1, position);
+        }
+    }
+
+    /**
+     * Measures the geometry a command needs from the position of the rank at the start of the command
+     *
+     * @param index - the index of the command
+     * @param position - the position of the rank at the start of the command
+     */
+    private void measureInvariants(int index, RankPosition position) {
+        int invariantIndex = index * INVARIANT_STRIDE;
+        switch (code[index * CODE_STRIDE + OPCODE]) {
+            case OP_GATE_TURN:
+                invariants[invariantIndex] = position.getGateTurnLength();
+                invariants[invariantIndex + 1] = position.getGateTurnReferenceAngle();
+                break;
+            case OP_PINWHEEL:
+                invariants[invariantIndex] = position.getPinwheelPivotX();
+                invariants[invariantIndex + 1] = position.getPinwheelPivotY();
+                invariants[invariantIndex + 2] = position.getPinwheelHalfLength();
+                invariants[invariantIndex + 3] = position.getPinwheelReferenceAngle();
+                break;
+            case OP_EXPAND:
+                float referenceAngle = position.getExpansionReferenceAngle();
+                invariants[invariantIndex] = Math.cos(referenceAngle);
+                invariants[invariantIndex + 1] = Math.sin(referenceAngle);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Writes the opcode, counts, arguments and constants of a command into the streams.  The
+     * constants are chosen so that multiplying them by the counts gives exactly the same float
+     * as the expressions in {@link Move#movePortionCounts}.
+     */
+    private static void emit(CommandPair command, int[] code, int codeIndex, float[] constants, int constantIndex) {
+        int opcode;
+        int arg0 = 0;
+        int arg1 = 0;
+        int arg2 = 0;
+        float constant0 = 0.0f;
+        float constant1 = 0.0f;
+
+        switch (command.getCommand()) {
+            case CommandPair.FM:
+                opcode = OP_STEP_Y;
+                constant0 = MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.BM:
+                opcode = OP_STEP_Y;
+                constant0 = -MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.RS:
+                opcode = OP_STEP_X;
+                constant0 = -MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.LS:
+                opcode = OP_STEP_X;
+                constant0 = MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.CURVE_LEFT:
+                opcode = OP_CURVE;
+                constant0 = MarchingConstants.STANDARD_STEP_SIZE;
+                arg0 = 0;
+                break;
+            case CommandPair.CURVE_RIGHT:
+                opcode = OP_CURVE;
+                constant0 = MarchingConstants.STANDARD_STEP_SIZE;
+                arg0 = 1;
+                break;
+            case CommandPair.FLAT_TO_ENDS:
+                opcode = OP_FLATTEN_MID;
+                break;
+            case CommandPair.FLAT_TO_MID:
+                opcode = OP_FLATTEN_ENDS;
+                break;
+            case CommandPair.GTCW_HEAD:
+                opcode = OP_GATE_TURN;
+                constant0 = -MarchingConstants.STANDARD_GATE_TURN_RATIO;
+                arg0 = PART.HEAD.ordinal();
+                break;
+            case CommandPair.GTCW_TAIL:
+                opcode = OP_GATE_TURN;
+                constant0 = -MarchingConstants.STANDARD_GATE_TURN_RATIO;
+                arg0 = PART.TAIL.ordinal();
+                break;
+            case CommandPair.GTCCW_HEAD:
+                opcode = OP_GATE_TURN;
+                constant0 = MarchingConstants.STANDARD_GATE_TURN_RATIO;
+                arg0 = PART.HEAD.ordinal();
+                break;
+            case CommandPair.GTCCW_TAIL:
+                opcode = OP_GATE_TURN;
+                constant0 = MarchingConstants.STANDARD_GATE_TURN_RATIO;
+                arg0 = PART.TAIL.ordinal();
+                break;
+            case CommandPair.PWCW:
+                opcode = OP_PINWHEEL;
+                constant0 = MarchingConstants.STANDARD_PINWHEEL_RATIO;
+                break;
+            case CommandPair.PWCCW:
+                opcode = OP_PINWHEEL;
+                constant0 = -MarchingConstants.STANDARD_PINWHEEL_RATIO;
+                break;
+            case CommandPair.EXPAND_HEAD:
+                opcode = OP_EXPAND;
+                constant0 = MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.EXPAND_TAIL:
+                opcode = OP_EXPAND;
+                constant1 = MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.EXPAND_BOTH:
+                //halving is exact in floating point, so it can be done before multiplying by the counts
+                opcode = OP_EXPAND;
+                constant0 = MarchingConstants.STANDARD_STEP_SIZE/2;
+                constant1 = MarchingConstants.STANDARD_STEP_SIZE/2;
+                break;
+            case CommandPair.CONDENSE_HEAD:
+                opcode = OP_EXPAND;
+                constant0 = -MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.CONDENSE_TAIL:
+                opcode = OP_EXPAND;
+                constant1 = -MarchingConstants.STANDARD_STEP_SIZE;
+                break;
+            case CommandPair.CONDENSE_BOTH:
+                opcode = OP_EXPAND;
+                constant0 = -MarchingConstants.STANDARD_STEP_SIZE/2;
+                constant1 = -MarchingConstants.STANDARD_STEP_SIZE/2;
+                break;
+            case CommandPair.DTP:
+                opcode = OP_DIRECT;
+                break;
+            case CommandPair.CORNER_LB:
+                opcode = OP_CORNER;
+                arg0 = 1;
+                arg1 = -1;
+                arg2 = 0;
+                break;
+            case CommandPair.CORNER_LF:
+                opcode = OP_CORNER;
+                arg0 = 1;
+                arg1 = 1;
+                arg2 = 0;
+                break;
+            case CommandPair.CORNER_RB:
+                opcode = OP_CORNER;
+                arg0 = -1;
+                arg1 = -1;
+                arg2 = 0;
+                break;
+            case CommandPair.CORNER_RF:
+                opcode = OP_CORNER;
+                arg0 = -1;
+                arg1 = 1;
+                arg2 = 0;
+                break;
+            case CommandPair.CORNER_FR:
+                opcode = OP_CORNER;
+                arg0 = -1;
+                arg1 = 1;
+                arg2 = 1;
+                break;
+            case CommandPair.CORNER_FL:
+                opcode = OP_CORNER;
+                arg0 = 1;
+                arg1 = 1;
+                arg2 = 1;
+                break;
+            case CommandPair.CORNER_BR:
+                opcode = OP_CORNER;
+                arg0 = -1;
+                arg1 = -1;
+                arg2 = 1;
+                break;
+            case CommandPair.CORNER_BL:
+                opcode = OP_CORNER;
+                arg0 = 1;
+                arg1 = -1;
+                arg2 = 1;
+                break;
+            default:
+                //mark time, halt, follow the arc and empty commands leave the rank where it is
+                opcode = OP_NONE;
+                break;
+        }
+
+        code[codeIndex + OPCODE] = opcode;
+        code[codeIndex + COUNTS] = command.getCounts();
+        code[codeIndex + ARG0] = arg0;
+        code[codeIndex + ARG1] = arg1;
+        code[codeIndex + ARG2] = arg2;
+        constants[constantIndex] = constant0;
+        constants[constantIndex + 1] = constant1;
+    }
+
+    /**
+     * Runs the given number of counts of one command of the program on a position
+     *
+     * @param index - the index of the command
+     * @param counts - the number of counts of the command to run, which may include a fraction of a count
+     * @param position - the position to move
+     */
+    private void run(int index, float counts, RankPosition position) {
+        int codeIndex = index * CODE_STRIDE;
+        int constantIndex = index * CONSTANT_STRIDE;
+        int invariantIndex = index * INVARIANT_STRIDE;
+        switch (code[codeIndex + OPCODE]) {
+            case OP_STEP_Y:
+                position.incrementPointsYValue(constants[constantIndex] * counts);
+                break;
+            case OP_STEP_X:
+                position.incrementPointsXValue(constants[constantIndex] * counts);
+                break;
+            case OP_CURVE:
+                position.curveMoveAuto(constants[constantIndex] * counts, code[codeIndex + ARG0]);
+                break;
+            case OP_FLATTEN_MID:
+                position.flattenMidMove(counts/(float)code[codeIndex + COUNTS]);
+                break;
+            case OP_FLATTEN_ENDS:
+                position.flattenEndsMove(counts/(float)code[codeIndex + COUNTS]);
+                break;
+            case OP_GATE_TURN:
+                position.gateTurnMove(constants[constantIndex] * counts, code[codeIndex + ARG0] == PART.HEAD.ordinal() ? PART.HEAD : PART.TAIL,
+                        (float) invariants[invariantIndex], (float) invariants[invariantIndex + 1]);
+                break;
+            case OP_PINWHEEL:
+                position.pinwheelMove(constants[constantIndex] * counts,
+                        (float) invariants[invariantIndex], (float) invariants[invariantIndex + 1],
+                        (float) invariants[invariantIndex + 2], (float) invariants[invariantIndex + 3]);
+                break;
+            case OP_EXPAND:
+                position.expansionMove(constants[constantIndex] * counts, constants[constantIndex + 1] * counts,
+                        invariants[invariantIndex], invariants[invariantIndex + 1]);
+                break;
+            case OP_DIRECT:
+                position.directMove(destinations[index], counts/(float)code[codeIndex + COUNTS]);
+                break;
+            case OP_CORNER:
+                position.cornerMove(counts/(float)code[codeIndex + COUNTS],
+                        code[codeIndex + ARG0], code[codeIndex + ARG1], code[codeIndex + ARG2]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Writes the position of the rank after the given number of counts of the move into
+     * an existing position object
+     *
+     * @param counts - the number of counts into the move, which may include a fraction of a count
+     * @param position - the position to overwrite with the result
+     */
+    void getPosition(float counts, RankPosition position) {
+        //find the number of commands that start before the requested count
+        int started = countCommandsStartedBefore(counts);
+
+        //the last of those is still in progress if it ends after the requested count, so only do a portion of it
+        if (started > 0 && starts[started] > counts) {
+            checkpoints.load(started-1, position);
+            run(started-1, counts - starts[started-1], position);
+        }
+        else {
+            checkpoints.load(started, position);
+        }
+    }
+
+    /**
+     * Returns the number of commands that start strictly before the given count.  Zero count
+     * commands sitting exactly on the count have not started yet.
+     */
+    private int countCommandsStartedBefore(float counts) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < counts) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the total number of counts taken up by the commands
+     */
+    int getCounts() {
+        return starts[length];
+    }
+}
@@ -23,6 +23,13 @@ public class DrillInfo {
     //A String that contains the name of the song
     private String songName;
 
+    // The IDs of the rank names, shared by every move of the drill
+    private RankRegistry rankRegistry = new RankRegistry();
+
+    // Where each count falls in the song, built when first asked for and thrown away whenever the
+    // song constants or the counts of the moves change
+    private SongTimeline timeline;
+
     public DrillInfo() {
         this.moves = new ArrayList<Move>();
         this.tempoHashMap = new HashMap<Integer, Integer>();
@@ -41,12 +48,34 @@ public class DrillInfo {
         this.countsHashMap = countsHashMap;
     }
 
+    /**
+     * Inserts an empty move, which starts and ends where the move before it ends.  The new move
+     * shares the frozen end positions of the move before it rather than copying them, so the
+     * moves after it are still up to date.
+     *
+     * @param counts - the number of counts in the new move
+     * @param index - where to insert the move, which has to be after the first move
+     */
     public void addMove(int counts, int index) {
-        moves.add(index, new Move(counts, moves.get(moves.size()-1).getEndPositions()));
+        shareRankRegistry();
+        moves.add(index, new Move(counts, moves.get(index - 1).getEndPositions()));
+        timeline = null;
+    }
+
+    /**
+     * Puts back a move that was deleted
+     *
+     * @param index - where to insert the move
+     * @param move - the move to insert
+     */
+    public void insertMove(int index, Move move) {
+        moves.add(index, move);
+        timeline = null;
     }
 
     public void deleteMove(int moveNum) {
         moves.remove(moveNum);
+        timeline = null;
     }
 
     /**
@@ -55,23 +84,56 @@ public class DrillInfo {
      * @param rankName - the rank name
      * @param rankPosition - the position of the rank
      */
-    public String addRankToMoves(String rankName, RankPosition rankPosition) {
+    public String addRankToMoves(final String rankName, final RankPosition rankPosition) {
         //check the moves to make sure the rank doesn't exist
         if (doesRankExist(rankName)) {
             return "The rank " + rankName + " already exists.  Please specify a different rank name.";
         }
 
-        for (Move move : moves) {
-            move.addRank(rankName, rankPosition);
-        }
+        //every move shares the same position, frozen before the moves are filled in parallel
+        rankPosition.freeze();
+
+        //the name is registered once up front, so the moves can be filled by ID without touching the registry
+        final int rankId = getRankRegistry().register(rankName);
+
+        //each move only touches its own arrays, so long drills can add the rank to several moves at once
+        ParallelEvaluation.forEach(moves.size(), new ParallelEvaluation.RangeTask() {
+            @Override
+            public void run(int first, int last) {
+                for (int i = first; i < last; i++) {
+                    moves.get(i).addRank(rankId, rankPosition);
+                }
+            }
+        });
 
         return "";
     }
 
     public void deleteRank(String rankName) {
+        int rankId = getRankRegistry().getId(rankName);
         for (Move move : moves) {
-            move.deleteRank(rankName);
+            move.deleteRank(rankId);
+        }
+    }
+
+    /**
+     * Renames a rank in every move.  The moves store their ranks by ID, so only the name
+     * registered for the ID changes.
+     *
+     * @param oldName - the current name of the rank
+     * @param newName - the new name of the rank
+     * @return - an error message, or an empty string if the rank was renamed
+     */
+    public String renameRank(String oldName, String newName) {
+        if (!doesRankExist(oldName)) {
+            return "The rank " + oldName + " does not exist.  Please use a rank that has already been created.";
         }
+        if (doesRankExist(newName)) {
+            return "The rank " + newName + " already exists.  Please specify a different rank name.";
+        }
+
+        getRankRegistry().rename(oldName, newName);
+        return "";
     }
 
     public boolean doesRankExist(String rankName) {
@@ -85,6 +147,62 @@ public class DrillInfo {
 
     public void setMoves(ArrayList<Move> moves) {
         this.moves = moves;
+        timeline = null;
+    }
+
+    /**
+     * Returns where each count of the drill falls in the song.  The timeline is only rebuilt
+     * after the song constants are set or moves are added or deleted here, so anything that
+     * changes the maps or move counts directly, such as the file loader, has to do so before the
+     * timeline is first used.
+     */
+    public SongTimeline getTimeline() {
+        if (timeline == null) {
+            timeline = new SongTimeline(moves, tempoHashMap, countsHashMap);
+        }
+        return timeline;
+    }
+
+    /**
+     * Returns the registry of rank IDs shared by every move of the drill
+     */
+    public RankRegistry getRankRegistry() {
+        shareRankRegistry();
+        return rankRegistry;
+    }
+
+    /**
+     * Moves any move that was added to the list directly, such as by the file loader, over to
+     * the drill's rank registry.  Moves that already share it are left alone.
+     */
+    private void shareRankRegistry() {
+        for (Move move : moves) {
+            move.setRankRegistry(rankRegistry);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the drill that later edits do not affect, for saving, exporting or
+     * playing back the drill without holding its lock.  The moves of the snapshot share their
+     * positions, rank data and commands with the moves of the drill, which only copy what they
+     * edit afterwards, so taking a snapshot does not copy any ranks.  Must be called while
+     * holding the drill's lock, once any pending propagation has finished.
+     *
+     * @return - a drill whose moves throw an exception if edited
+     */
+    public DrillInfo snapshot() {
+        RankRegistry snapshotRanks = getRankRegistry().copy();
+        ArrayList<Move> snapshotMoves = new ArrayList<Move>(moves.size());
+        for (Move move : moves) {
+            snapshotMoves.add(move.snapshot(snapshotRanks));
+        }
+
+        DrillInfo snapshot = new DrillInfo(snapshotMoves, new HashMap<Integer, Integer>(tempoHashMap),
+                new HashMap<Integer, Integer>(countsHashMap));
+        snapshot.songName = songName;
+        snapshot.rankRegistry = snapshotRanks;
+        snapshot.timeline = timeline;
+        return snapshot;
     }
 
     /**
@@ -117,6 +235,7 @@ public class DrillInfo {
      */
     public void setTempoHashMap(HashMap<Integer, Integer> tempoHashMap){
         this.tempoHashMap = tempoHashMap;
+        timeline = null;
     }
 
     /**
@@ -127,6 +246,7 @@ public class DrillInfo {
      */
     public void setCountsHashMap(HashMap<Integer, Integer> countsHashMap){
         this.countsHashMap = countsHashMap;
+        timeline = null;
     }
 
     /**
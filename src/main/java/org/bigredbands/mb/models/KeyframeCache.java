@@ -0,0 +1,120 @@
+package org.bigredbands.mb.models;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps track of every {@link KeyframeTable} that is currently holding positions and
+ * enforces a limit on the total number of positions stored across all moves.  When a
+ * new table would go over the limit, the tables that were used least recently are
+ * released first, so shows with hundreds of moves stay bounded in memory.
+ */
+public class KeyframeCache {
+
+    // Roughly 64 counts for 150 ranks in each of 100 moves, at 28 bytes per packed position
+    public static final int DEFAULT_MAX_POSITIONS = 1000000;
+
+    private static final KeyframeCache instance = new KeyframeCache(DEFAULT_MAX_POSITIONS);
+
+    // The tables currently holding positions, ordered from least to most recently used
+    private final LinkedHashMap<KeyframeTable, Integer> tables = new LinkedHashMap<KeyframeTable, Integer>(16, 0.75f, true);
+
+    // The total number of positions held by the tables
+    private int totalPositions = 0;
+
+    // The most positions that may be held at once
+    private int maxPositions;
+
+    KeyframeCache(int maxPositions) {
+        this.maxPositions = maxPositions;
+    }
+
+    /**
+     * Returns the cache shared by every move
+     */
+    static KeyframeCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the most positions the shared cache will hold at once
+     *
+     * @return - the limit on the number of cached positions
+     */
+    public static int getMaxPositions() {
+        return instance.getLimit();
+    }
+
+    /**
+     * Sets the most positions the shared cache will hold at once, releasing
+     * tables immediately if the cache is now over the limit
+     *
+     * @param maxPositions - the new limit on the number of cached positions
+     */
+    public static void setMaxPositions(int maxPositions) {
+        instance.setLimit(maxPositions);
+    }
+
+    synchronized int getLimit() {
+        return maxPositions;
+    }
+
+    synchronized void setLimit(int maxPositions) {
+        this.maxPositions = maxPositions;
+        evict();
+    }
+
+    /**
+     * Checks if a table of the given size could be stored without going over the limit by itself
+     */
+    synchronized boolean fits(int size) {
+        return size <= maxPositions;
+    }
+
+    /**
+     * Records a newly built table, releasing older tables if needed to make room for it
+     */
+    synchronized void add(KeyframeTable table) {
+        tables.put(table, table.getSize());
+        totalPositions = totalPositions + table.getSize();
+        evict();
+    }
+
+    /**
+     * Marks the table as the most recently used one
+     */
+    synchronized void touch(KeyframeTable table) {
+        tables.get(table);
+    }
+
+    /**
+     * Releases the given table and stops counting it against the limit
+     */
+    synchronized void remove(KeyframeTable table) {
+        Integer size = tables.remove(table);
+        if (size != null) {
+            totalPositions = totalPositions - size;
+        }
+        table.release();
+    }
+
+    /**
+     * Returns the total number of positions held by the cache
+     */
+    synchronized int getTotalPositions() {
+        return totalPositions;
+    }
+
+    /**
+     * Releases the least recently used tables until the cache is back under the limit
+     */
+    private void evict() {
+        Iterator<KeyframeTable> iterator = tables.keySet().iterator();
+        while (totalPositions > maxPositions && iterator.hasNext()) {
+            KeyframeTable table = iterator.next();
+            totalPositions = totalPositions - table.getSize();
+            table.release();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+/**
+ * The position of every rank of a move at every whole count, computed in one
+ * sequential pass the first time any count of the move is asked for.  Scrubbing
+ * back and forth through the move is then a lookup instead of a command replay.
+ * The positions are packed into a {@link PositionBuffer}, with the slot of a rank
+ * at a count being count * (number of ranks) + (index of the rank).
+ *
+ * Tables are only valid for the version of the move they were built from, and
+ * may be released at any time by the {@link KeyframeCache} to stay within its budget.
+ */
+class KeyframeTable {
+
+    // The version of the move this table was built from
+    private final int moveVersion;
+
+    // The number of positions stored in the table, used for the cache budget
+    private final int size;
+
+    // The ID of the rank stored in each slot of a frame
+    private final int[] rankIds;
+
+    // The positions of every rank at every count, null once released
+    private PositionBuffer positions;
+
+    private KeyframeTable(int moveVersion, int[] rankIds, PositionBuffer positions) {
+        this.moveVersion = moveVersion;
+        this.rankIds = rankIds;
+        this.positions = positions;
+        this.size = positions.getCapacity();
+    }
+
+    /**
+     * Evaluates every rank of the move at every count from 0 to the length of the move.  Large
+     * drills are split by rank across threads; every rank has its own slots at each count, so
+     * the threads never write to the same place.
+     *
+     * @param move - the move to evaluate
+     * @param rankIds - the IDs of the ranks to evaluate, in the order they will be stored
+     * @param cursors - the cursor of each rank, in the same order as the IDs
+     * @return - the finished table
+     */
+    static KeyframeTable build(final Move move, final int[] rankIds, final RankCursor[] cursors) {
+        final int counts = move.getCounts();
+        final int rankCount = rankIds.length;
+        final PositionBuffer positions = new PositionBuffer(rankCount * (counts + 1));
+        ParallelEvaluation.forEach(rankCount, new ParallelEvaluation.RangeTask() {
+            @Override
+            public void run(int first, int last) {
+                if (first >= last) {
+                    return;
+                }
+                RankPosition scratch = new RankPosition(move.getStartPosition(rankIds[first]));
+                for (int rank = first; rank < last; rank++) {
+                    for (int count = 0; count <= counts; count++) {
+                        cursors[rank].getPosition(count, scratch);
+                        positions.store(count * rankCount + rank, scratch);
+                    }
+                }
+            }
+        });
+        return new KeyframeTable(move.getVersion(), rankIds, positions);
+    }
+
+    /**
+     * Returns the number of positions a table for the given move would hold
+     */
+    static int estimateSize(Move move) {
+        return move.getStartPositions().size() * (move.getCounts() + 1);
+    }
+
+    /**
+     * Checks if this table still describes the given version of the move
+     */
+    synchronized boolean isValid(int version) {
+        return positions != null && moveVersion == version;
+    }
+
+    /**
+     * Returns the positions of every rank at the given count, or null if the table was released.
+     * A snapshot of the move shares the table of the move it was taken from, so the ranks are
+     * named by the registry of whichever move is asking.
+     *
+     * @param count - the count of the move, clamped to the length of the move
+     * @param names - the registry to name the ranks with, which hands out the same IDs as the move's
+     * @return - a new map of rank name to position that the caller may keep or modify
+     */
+    synchronized HashMap<String, RankPosition> getFrame(int count, RankRegistry names) {
+        if (positions == null) {
+            return null;
+        }
+
+        HashMap<String, RankPosition> frame = new HashMap<String, RankPosition>();
+        int firstSlot = getFirstSlot(count);
+        for (int rank = 0; rank < rankIds.length; rank++) {
+            frame.put(names.getName(rankIds[rank]), positions.getPosition(firstSlot + rank));
+        }
+        return frame;
+    }
+
+    /**
+     * Copies the positions of every rank at every count in a range into a buffer, with the
+     * same slot layout as the table but starting from the first count of the range
+     *
+     * @param firstCount - the first count to copy, clamped to the length of the move
+     * @param lastCount - the last count to copy, inclusive
+     * @param destination - the buffer to copy into
+     * @return - true if the positions were copied, false if the table was released
+     */
+    synchronized boolean copyFrames(int firstCount, int lastCount, PositionBuffer destination) {
+        if (positions == null) {
+            return false;
+        }
+
+        for (int count = firstCount; count <= lastCount; count++) {
+            positions.copyTo(getFirstSlot(count), destination, (count - firstCount) * rankIds.length, rankIds.length);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot holding the first rank at the given count, clamped to the length of the move
+     */
+    private int getFirstSlot(int count) {
+        if (rankIds.length == 0) {
+            return 0;
+        }
+        int counts = size / rankIds.length;
+        return Math.max(0, Math.min(count, counts - 1)) * rankIds.length;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Drops the stored positions so they can be garbage collected
+     */
+    synchronized void release() {
+        positions = null;
+    }
+}
@@ -1,11 +1,12 @@
 package org.bigredbands.mb.models;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import org.bigredbands.mb.models.MarchingConstants.PART;
 import org.w3c.dom.Document;
@@ -14,57 +15,279 @@ import org.w3c.dom.Text;
 
 public class Move {
 
-    private HashMap<String, ArrayList<CommandPair>> commands;
+    // The IDs of the rank names, shared by every move of the drill
+    private RankRegistry ranks;
 
-    //NOTE: the start position variable of one rank and the end position variable of the previous rank both
-    //point to the same object
-    private HashMap<String, RankPosition> startPositions;
-    private HashMap<String, RankPosition> endPositions;
+    // The rank data is kept in arrays indexed by rank ID, and only seen as maps from rank name by
+    // code outside the move
+    private RankMap<ArrayList<CommandPair>> commands;
+
+    //NOTE: the start position of a rank and its end position in the previous move are the same frozen
+    //object, so a start position that is up to date can be recognized by comparing references
+    private RankMap<RankPosition> startPositions;
+    private RankMap<RankPosition> endPositions;
 
     private String comments;
     private Integer moveCounts;
 
+    // Incremented on every edit so that cached evaluation state can tell when it is out of date
+    private volatile int version;
+
+    // The playback cursor of each rank ID, created the first time the rank is evaluated
+    private RankCursor[] cursors = new RankCursor[0];
+
+    // The positions of every rank at every count, built the first time a count is asked for
+    private KeyframeTable keyframes;
+
+    // The rank IDs in the order their positions are written to buffers, and the version and number
+    // of renames it was sorted for
+    private int[] rankOrder;
+    private int rankOrderVersion;
+    private int rankOrderRenames;
+
+    // The rank IDs whose end position is out of date, recalculated the next time the end position is read
+    private BitSet staleEnds = new BitSet();
+
+    // The rank IDs whose command list may also belong to a snapshot of this move, and so is copied
+    // before it is next edited
+    private BitSet sharedCommands = new BitSet();
+
+    // True if this move is a snapshot, which is never edited
+    private boolean snapshot = false;
+
+    // Whether the commands of each rank ID only march or slide it, and the steps they take
+    private Translation[] translations = new Translation[0];
+
+    // The end positions as last published for other threads.  A published map is never changed
+    // afterwards and its positions are frozen, so it can be read without holding the drill's lock
+    private volatile HashMap<String, RankPosition> publishedPositions;
+
+    // The version of the move and the number of renames the published positions were taken from
+    private volatile int publishedVersion = -1;
+    private volatile int publishedRenames = -1;
+
     public Move() {
-        startPositions = new HashMap<String, RankPosition>();
-        endPositions = new HashMap<String, RankPosition>();
-        commands = new HashMap<String, ArrayList<CommandPair>>();
+        this(new RankRegistry());
+    }
+
+    /**
+     * Creates an empty move whose ranks get their IDs from the given registry
+     *
+     * @param ranks - the rank registry of the drill the move belongs to
+     */
+    public Move(RankRegistry ranks) {
+        this.ranks = ranks;
+        startPositions = new RankMap<RankPosition>(ranks);
+        endPositions = new RankMap<RankPosition>(ranks);
+        commands = new RankMap<ArrayList<CommandPair>>(ranks);
         comments = "";
         moveCounts = 0;
     }
 
-    public Move(int counts, HashMap<String, RankPosition> startPositions) {
-        this.startPositions = deepCopyPositions(startPositions);
-        this.endPositions = deepCopyPositions(startPositions);
-        commands = new HashMap<String, ArrayList<CommandPair>>();
-        for (String rankName : startPositions.keySet()) {
-            commands.put(rankName, new ArrayList<CommandPair>());
+    @SuppressWarnings("unchecked")
+    public Move(int counts, Map<String, RankPosition> startPositions) {
+        if (startPositions instanceof RankMap) {
+            //the end positions of another move of the drill are already frozen, so their array is
+            //shared until either move changes it
+            RankMap<RankPosition> previousPositions = (RankMap<RankPosition>) startPositions;
+            this.ranks = previousPositions.getRegistry();
+            this.startPositions = new RankMap<RankPosition>(previousPositions, ranks);
         }
+        else {
+            this.ranks = new RankRegistry();
+            this.startPositions = new RankMap<RankPosition>(ranks);
+            this.startPositions.putAll(sharePositions(startPositions));
+        }
+
+        //the new move has no commands yet, so every rank ends where it starts, and the following
+        //move still starts from the same positions without being evaluated again
+        this.endPositions = new RankMap<RankPosition>(this.startPositions, ranks);
+
+        //every rank shares one empty command list, which is copied for a rank when it gets a command
+        commands = new RankMap<ArrayList<CommandPair>>(ranks);
+        ArrayList<CommandPair> noCommands = new ArrayList<CommandPair>();
+        for (int rankId = 0; rankId < this.startPositions.capacity(); rankId++) {
+            if (this.startPositions.get(rankId) != null) {
+                commands.put(rankId, noCommands);
+            }
+        }
+        sharedCommands.set(0, commands.capacity());
         this.comments = "";
         this.moveCounts = counts;
     }
 
+    /**
+     * Creates a snapshot of a move, which shares the rank data of the move instead of copying it
+     */
+    private Move(Move move, RankRegistry snapshotRanks) {
+        ranks = snapshotRanks;
+        commands = new RankMap<ArrayList<CommandPair>>(move.commands, snapshotRanks);
+        startPositions = new RankMap<RankPosition>(move.startPositions, snapshotRanks);
+        endPositions = new RankMap<RankPosition>(move.endPositions, snapshotRanks);
+        comments = move.comments;
+        moveCounts = move.moveCounts;
+        version = move.version;
+        keyframes = move.keyframes;
+        snapshot = true;
+    }
+
+    /**
+     * Takes a snapshot of the move that later edits to the move do not affect.  Nothing is
+     * copied up front: the positions are frozen, and the arrays of rank data and the command
+     * list of each rank are only copied by the move when it next edits them.  Must be called
+     * while holding the drill's lock.
+     *
+     * @param snapshotRanks - a copy of the move's rank registry, for the snapshot to name its ranks with
+     * @return - a move that can be read from any thread, and throws an exception if edited
+     */
+    Move snapshot(RankRegistry snapshotRanks) {
+        //the snapshot can then be read without ever writing to the shared arrays
+        updateEndPositions();
+        sharedCommands.set(0, commands.capacity());
+        return new Move(this, snapshotRanks);
+    }
+
+    /**
+     * Checks if the move is a snapshot, which is never edited
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Throws an exception if the move is a snapshot
+     */
+    private void checkNotSnapshot() {
+        if (snapshot) {
+            throw new IllegalStateException("A snapshot of a move cannot be edited.");
+        }
+    }
+
+    /**
+     * Returns the command list of a rank for editing, first copying it if a snapshot may also
+     * hold the list
+     */
+    private ArrayList<CommandPair> ownCommands(int rankId) {
+        checkNotSnapshot();
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands != null && sharedCommands.get(rankId)) {
+            rankCommands = new ArrayList<CommandPair>(rankCommands);
+            commands.put(rankId, rankCommands);
+        }
+        sharedCommands.clear(rankId);
+        return rankCommands;
+    }
+
+    /**
+     * Returns the registry the ranks of this move get their IDs from
+     */
+    public RankRegistry getRankRegistry() {
+        return ranks;
+    }
+
+    /**
+     * Moves the ranks of this move to the given registry, so it can share rank IDs with the
+     * other moves of its drill.  Does nothing if the move already uses the registry.
+     *
+     * @param newRanks - the registry of the drill
+     */
+    void setRankRegistry(RankRegistry newRanks) {
+        if (ranks == newRanks) {
+            return;
+        }
+
+        RankMap<ArrayList<CommandPair>> newCommands = new RankMap<ArrayList<CommandPair>>(newRanks);
+        RankMap<RankPosition> newStartPositions = new RankMap<RankPosition>(newRanks);
+        RankMap<RankPosition> newEndPositions = new RankMap<RankPosition>(newRanks);
+        BitSet newStaleEnds = new BitSet();
+        BitSet newSharedCommands = new BitSet();
+        for (int rankId = 0; rankId < ranks.size(); rankId++) {
+            String rankName = ranks.getName(rankId);
+            if (rankName == null) {
+                continue;
+            }
+            int newId = newRanks.register(rankName);
+            newCommands.put(newId, commands.get(rankId));
+            newStartPositions.put(newId, startPositions.get(rankId));
+            newEndPositions.put(newId, endPositions.get(rankId));
+            if (staleEnds.get(rankId)) {
+                newStaleEnds.set(newId);
+            }
+            if (sharedCommands.get(rankId)) {
+                newSharedCommands.set(newId);
+            }
+        }
+
+        markEdited();
+        ranks = newRanks;
+        commands = newCommands;
+        startPositions = newStartPositions;
+        endPositions = newEndPositions;
+        staleEnds = newStaleEnds;
+        sharedCommands = newSharedCommands;
+        cursors = new RankCursor[0];
+        translations = new Translation[0];
+        rankOrder = null;
+    }
+
     public void addRank(String rankName, RankPosition rankPosition) {
-        commands.put(rankName, new ArrayList<CommandPair>());
-        startPositions.put(rankName, rankPosition);
-        endPositions.put(rankName, new RankPosition(rankPosition));
+        addRank(ranks.register(rankName), rankPosition);
+    }
+
+    /**
+     * Adds a rank by ID, for when the caller has already registered its name
+     *
+     * @param rankId - the ID of the rank in this move's registry
+     * @param rankPosition - the position of the rank, which is frozen and shared
+     */
+    void addRank(int rankId, RankPosition rankPosition) {
+        markEdited();
+        commands.put(rankId, new ArrayList<CommandPair>());
+        startPositions.put(rankId, rankPosition.freeze());
+        endPositions.put(rankId, rankPosition);
+        staleEnds.clear(rankId);
+        sharedCommands.clear(rankId);
     }
 
     public void deleteRank(String rankName) {
-        commands.remove(rankName);
-        startPositions.remove(rankName);
-        endPositions.remove(rankName);
+        deleteRank(ranks.getId(rankName));
+    }
+
+    /**
+     * Deletes a rank by ID.  The ID stays registered, so it is never given to another rank.
+     *
+     * @param rankId - the ID of the rank, or -1 to do nothing
+     */
+    void deleteRank(int rankId) {
+        if (rankId < 0) {
+            return;
+        }
+        markEdited();
+        if (rankId < cursors.length) {
+            cursors[rankId] = null;
+        }
+        commands.put(rankId, null);
+        startPositions.put(rankId, null);
+        endPositions.put(rankId, null);
+        staleEnds.clear(rankId);
+        sharedCommands.clear(rankId);
+        if (rankId < translations.length) {
+            translations[rankId] = null;
+        }
     }
 
     public String addCommand(String rankName, CommandPair command) {
         //check to make sure the specified rank exists
         //String rankName = (String)rankNames.toArray()[0];
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
         //calculate to see if this command would put the move longer than it can actually be
         int totalCounts = 0;
-        for (CommandPair commandPair : commands.get(rankName)) {
+        for (CommandPair commandPair : rankCommands) {
             totalCounts = totalCounts + commandPair.getCounts();
         }
         if (totalCounts + command.getCounts() > moveCounts) {
@@ -72,10 +295,11 @@ public class Move {
         }
 
         //add the new command to the commands arraylist for the rank
-        commands.get(rankName).add(command);
+        markEdited();
+        ownCommands(rankId).add(command);
 
-        //calculate the new end position and store it
-        endPositions.put(rankName, getPositionFromCommands(rankName));
+        //the end position is recalculated the next time it is needed
+        commandsChanged(rankId);
 
         return "";
 
@@ -83,36 +307,47 @@ public class Move {
 
     public String removeCommands(String rankName, int[] commandIndices) {
         //check to make sure the specified rank exists
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
         //remove the commands from the list
+        markEdited();
+        rankCommands = ownCommands(rankId);
         for (int i = 0; i < commandIndices.length; i++) {
-            commands.get(rankName).remove(commandIndices[i]-i);  //need to subtract i because we are remove ranks as we iterate, changing their indices
+            rankCommands.remove(commandIndices[i]-i);  //need to subtract i because we are remove ranks as we iterate, changing their indices
         }
 
-        //calculate the new end position and store it
-        endPositions.put(rankName, getPositionFromCommands(rankName));
+        //the end position is recalculated the next time it is needed
+        commandsChanged(rankId);
 
         return "";
     }
 
     public String renameCommand(String rankName, int index, String name) {
         //check to make sure the specified rank exists
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        if (commands.get(rankId) == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
-        //set the name of the command
-        commands.get(rankName).get(index).setName(name);
+        //replace the command with a renamed copy, since a snapshot may hold the original
+        ArrayList<CommandPair> rankCommands = ownCommands(rankId);
+        CommandPair command = rankCommands.get(index);
+        CommandPair renamedCommand = new CommandPair(command.getCommand(), command.getCounts(), name);
+        renamedCommand.setDestination(command.getDest());
+        rankCommands.set(index, renamedCommand);
 
         return "";
     }
 
     public String moveCommandsUp(String rankName, int[] commandIndices) {
         //check to make sure the specified rank exists
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
@@ -126,9 +361,12 @@ public class Move {
         }
 
         //move the command up one position
+        markEdited();
+        commandsChanged(rankId);
+        rankCommands = ownCommands(rankId);
         for (int i = 0; i < commandIndices.length; i++) {
-            tempCommandPair = commands.get(rankName).remove(commandIndices[i]);
-            commands.get(rankName).add(commandIndices[i]-1, tempCommandPair);
+            tempCommandPair = rankCommands.remove(commandIndices[i]);
+            rankCommands.add(commandIndices[i]-1, tempCommandPair);
         }
 
         return "";
@@ -136,7 +374,9 @@ public class Move {
 
     public String moveCommandsDown(String rankName, int[] commandIndices) {
         //check to make sure the specified rank exists
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
@@ -145,14 +385,17 @@ public class Move {
 
         //simply return for cases where you do not want to act but also do not need an error message
         //(for example, no commands selected or the commands cannot move down any more).
-        if (commandIndices.length <= 0 || commandIndices[commandIndices.length-1] >= commands.get(rankName).size()-1) {
+        if (commandIndices.length <= 0 || commandIndices[commandIndices.length-1] >= rankCommands.size()-1) {
             return "";
         }
 
         //move the command up one position
+        markEdited();
+        commandsChanged(rankId);
+        rankCommands = ownCommands(rankId);
         for (int i = commandIndices.length-1; i >= 0; i--) {
-            tempCommandPair = commands.get(rankName).remove(commandIndices[i]);
-            commands.get(rankName).add(commandIndices[i]+1, tempCommandPair);
+            tempCommandPair = rankCommands.remove(commandIndices[i]);
+            rankCommands.add(commandIndices[i]+1, tempCommandPair);
         }
 
         return "";
@@ -160,7 +403,9 @@ public class Move {
 
     public String mergeCommands(String rankName, int[] commandIndices) {
         //check to make sure the specified rank exists
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
@@ -171,30 +416,35 @@ public class Move {
         }
 
         //get the first command type
-        int firstCommandType = commands.get(rankName).get(commandIndices[0]).getCommand();
+        int firstCommandType = rankCommands.get(commandIndices[0]).getCommand();
 
         //check that all other selected commands are of the same type
         for (int i = 1; i < commandIndices.length; i++) {
-            if (firstCommandType != commands.get(rankName).get(commandIndices[i]).getCommand()) {
+            if (firstCommandType != rankCommands.get(commandIndices[i]).getCommand()) {
                 return "The selected commands were of different types.  You can only merge commands that have the same type.";
             }
         }
 
         //merge the selected commands if they are of the same type.
         //NOTE: we are throwing away any command names that have been adding before the merge
+        markEdited();
+        commandsChanged(rankId);
+        rankCommands = ownCommands(rankId);
         int mergedCounts = 0;
         for (int i = 0; i < commandIndices.length; i++) {
-            CommandPair tempCommand = commands.get(rankName).remove(commandIndices[i]-i);  //need to subtract i because we are remove ranks as we iterate, changing their indices
+            CommandPair tempCommand = rankCommands.remove(commandIndices[i]-i);  //need to subtract i because we are remove ranks as we iterate, changing their indices
             mergedCounts = mergedCounts + tempCommand.getCounts();
         }
-        commands.get(rankName).add(commandIndices[0], new CommandPair(firstCommandType, mergedCounts));
+        rankCommands.add(commandIndices[0], new CommandPair(firstCommandType, mergedCounts));
 
         return "";
     }
 
     public String splitCommand(String rankName, int index, int count) {
         //check to make sure the specified rank exists
-        if (!commands.containsKey(rankName)) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands == null) {
             return "The rank " + rankName + " does not exist.  Please use a rank that has already been created.";
         }
 
@@ -204,28 +454,208 @@ public class Move {
         // including the check here because
         // its bad to assume that this is true, and the other check should realy be moved to here and this
         // function should return something different besides just a string
-        if (count >= commands.get(rankName).get(index).getCounts()) {
+        if (count >= rankCommands.get(index).getCounts()) {
             return "The specified count was larger than counts in the move.";
         }
 
-        if (index >= commands.get(rankName).size()) {
+        if (index >= rankCommands.size()) {
             return "The specified index was larger than the size of the command list.";
         }
 
-        CommandPair tempCommand = commands.get(rankName).remove(index);
-        commands.get(rankName).add(index, new CommandPair(tempCommand.getCommand(), count));
-        commands.get(rankName).add(index+1, new CommandPair(tempCommand.getCommand(), tempCommand.getCounts() - count));
+        markEdited();
+        commandsChanged(rankId);
+        rankCommands = ownCommands(rankId);
+        CommandPair tempCommand = rankCommands.remove(index);
+        rankCommands.add(index, new CommandPair(tempCommand.getCommand(), count));
+        rankCommands.add(index+1, new CommandPair(tempCommand.getCommand(), tempCommand.getCounts() - count));
 
         return "";
     }
 
-    //TODO: assumes the rank name exists
+    /**
+     * Returns the command list of a rank as a record of its commands at this point.  The move
+     * copies the list before it next edits it, so the list never changes afterwards.
+     *
+     * @param rankName - the rank whose commands to return
+     * @return - the command list, or null if the rank is not in the move
+     */
+    public ArrayList<CommandPair> shareCommands(String rankName) {
+        int rankId = ranks.getId(rankName);
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankCommands != null) {
+            sharedCommands.set(rankId);
+        }
+        return rankCommands;
+    }
+
+    /**
+     * Puts back a command list returned by {@link #shareCommands(String)}, such as when an edit is
+     * undone.  The list stays shared, so it is copied before the move next edits it.  The end
+     * position is recalculated the next time it is needed.
+     *
+     * @param rankName - the rank whose commands to set, which has to be in the move
+     * @param rankCommands - the command list to put back
+     */
+    public void restoreCommands(String rankName, ArrayList<CommandPair> rankCommands) {
+        int rankId = ranks.getId(rankName);
+        if (rankId < 0) {
+            return;
+        }
+        markEdited();
+        commands.put(rankId, rankCommands);
+        sharedCommands.set(rankId);
+        commandsChanged(rankId);
+    }
+
+    /**
+     * Puts back a deleted rank with the positions and commands it had in this move
+     *
+     * @param rankName - the name of the rank
+     * @param startPosition - the start position the rank had, which is frozen and shared
+     * @param endPosition - the end position the rank had, which is frozen and shared
+     * @param rankCommands - a command list returned by {@link #shareCommands(String)}
+     */
+    public void restoreRank(String rankName, RankPosition startPosition, RankPosition endPosition,
+            ArrayList<CommandPair> rankCommands) {
+        int rankId = ranks.register(rankName);
+        markEdited();
+        commands.put(rankId, rankCommands);
+        sharedCommands.set(rankId);
+        startPositions.put(rankId, startPosition.freeze());
+        endPositions.put(rankId, endPosition.freeze());
+        staleEnds.clear(rankId);
+        if (rankId < translations.length) {
+            translations[rankId] = null;
+        }
+    }
+
+    /**
+     * Forgets what was worked out from the commands of a rank, after they were edited.  The end
+     * position is recalculated the next time it is needed.
+     */
+    private void commandsChanged(int rankId) {
+        if (rankId < translations.length) {
+            translations[rankId] = null;
+        }
+        staleEnds.set(rankId);
+    }
+
+    /**
+     * Sets the start position of a rank.  The position is frozen, since it may also be the end
+     * position of the previous move.  The end position is recalculated the next time it is read,
+     * and keeps its old object if it turns out identical, so that propagation through the
+     * following moves can stop here.
+     *
+     * TODO: assumes the rank name exists
+     * @param rankName - the rank to update
+     * @param newStartPos - the new start position, usually the end position of the previous move
+     */
     public void updatePositions(String rankName, RankPosition newStartPos) {
-        startPositions.put(rankName, newStartPos);
-        endPositions.put(rankName, getPositionFromCommands(rankName));
+        updatePositions(ranks.getId(rankName), newStartPos);
+    }
+
+    /**
+     * Sets the start position of a rank by ID, the same way as {@link #updatePositions(String, RankPosition)}
+     *
+     * @param rankId - the ID of the rank in this move's registry
+     * @param newStartPos - the new start position, usually the end position of the previous move
+     */
+    public void updatePositions(int rankId, RankPosition newStartPos) {
+        markEdited();
+        startPositions.put(rankId, newStartPos.freeze());
+        staleEnds.set(rankId);
     }
 
-    public HashMap<String, RankPosition> deepCopyPositions(HashMap<String, RankPosition> existingPositions) {
+    /**
+     * Checks if the start position of a rank is the given end position of the previous move,
+     * in which case the rank does not need updating
+     *
+     * @param rankName - the rank to check
+     * @param previousEndPos - the current end position of the rank in the previous move
+     */
+    public boolean isStartUpToDate(String rankName, RankPosition previousEndPos) {
+        return isStartUpToDate(ranks.getId(rankName), previousEndPos);
+    }
+
+    /**
+     * Checks if the start position of a rank is the given end position of the previous move
+     *
+     * @param rankId - the ID of the rank in this move's registry
+     * @param previousEndPos - the current end position of the rank in the previous move
+     */
+    public boolean isStartUpToDate(int rankId, RankPosition previousEndPos) {
+        return startPositions.get(rankId) == previousEndPos;
+    }
+
+    /**
+     * Returns the end position of a rank, recalculating only that rank if it is out of date
+     *
+     * @param rankName - the rank whose end position to return
+     */
+    public RankPosition getEndPosition(String rankName) {
+        return getEndPosition(ranks.getId(rankName));
+    }
+
+    /**
+     * Returns the end position of a rank by ID, recalculating only that rank if it is out of date
+     *
+     * @param rankId - the ID of the rank in this move's registry
+     * @return - the end position, or null if the rank is not in the move
+     */
+    public RankPosition getEndPosition(int rankId) {
+        if (rankId < 0) {
+            return null;
+        }
+        updateEndPosition(rankId);
+        return endPositions.get(rankId);
+    }
+
+    /**
+     * Returns the start position of a rank by ID, or null if the rank is not in the move
+     */
+    RankPosition getStartPosition(int rankId) {
+        return startPositions.get(rankId);
+    }
+
+    /**
+     * Returns the commands of a rank by ID, or null if the rank is not in the move
+     */
+    ArrayList<CommandPair> getCommands(int rankId) {
+        return commands.get(rankId);
+    }
+
+    /**
+     * Recalculates the end position of every rank whose start position or commands changed
+     * since its end position was last read
+     */
+    private void updateEndPositions() {
+        for (int rankId = staleEnds.nextSetBit(0); rankId >= 0; rankId = staleEnds.nextSetBit(rankId + 1)) {
+            updateEndPosition(rankId);
+        }
+    }
+
+    /**
+     * Recalculates the end position of a rank if it is out of date.  An identical end position
+     * keeps the old object, which the next move may be sharing as its start position.
+     */
+    private void updateEndPosition(int rankId) {
+        if (!staleEnds.get(rankId)) {
+            return;
+        }
+        staleEnds.clear(rankId);
+        if (startPositions.get(rankId) == null || commands.get(rankId) == null) {
+            return;
+        }
+
+        RankPosition oldEndPos = endPositions.get(rankId);
+        RankPosition newEndPos = getPositionFromCommands(rankId);
+        if (oldEndPos != null && oldEndPos.isIdentical(newEndPos)) {
+            return;
+        }
+        endPositions.put(rankId, newEndPos.freeze());
+    }
+
+    public HashMap<String, RankPosition> deepCopyPositions(Map<String, RankPosition> existingPositions) {
         HashMap<String, RankPosition> positionCopy = new HashMap<String, RankPosition>();
 
         for (String rankName : existingPositions.keySet()) {
@@ -235,7 +665,22 @@ public class Move {
         return positionCopy;
     }
 
+    /**
+     * Freezes the given positions so they can be shared instead of copied
+     *
+     * @param existingPositions - the positions to share
+     * @return - a new map holding the same, now frozen, positions
+     */
+    public static HashMap<String, RankPosition> sharePositions(Map<String, RankPosition> existingPositions) {
+        HashMap<String, RankPosition> sharedPositions = new HashMap<String, RankPosition>();
+        for (String rankName : existingPositions.keySet()) {
+            sharedPositions.put(rankName, existingPositions.get(rankName).freeze());
+        }
+        return sharedPositions;
+    }
+
     public void setComments(String comments) {
+        checkNotSnapshot();
         this.comments = comments;
     }
 
@@ -243,31 +688,52 @@ public class Move {
         return comments;
     }
 
-    public HashMap<String, ArrayList<CommandPair>> getCommands() {
+    /**
+     * Returns the commands of every rank.  Ranks added to the map are registered with the
+     * drill's rank registry.
+     */
+    public Map<String, ArrayList<CommandPair>> getCommands() {
         return commands;
     }
 
-    public void setCommands(HashMap<String, ArrayList<CommandPair>> commands) {
-        this.commands= commands;
+    public void setCommands(Map<String, ArrayList<CommandPair>> commands) {
+        markEdited();
+        this.commands.clear();
+        this.commands.putAll(commands);
+        sharedCommands.clear();
+        translations = new Translation[0];
+        for (String rankName : commands.keySet()) {
+            staleEnds.set(ranks.getId(rankName));
+        }
     }
 
-    public void setStartPositions(HashMap<String, RankPosition> startPosition) {
-        this.startPositions = startPosition;
+    public void setStartPositions(Map<String, RankPosition> startPosition) {
+        markEdited();
+        this.startPositions.clear();
+        this.startPositions.putAll(sharePositions(startPosition));
+        for (String rankName : startPosition.keySet()) {
+            staleEnds.set(ranks.getId(rankName));
+        }
     }
 
-    public HashMap<String, RankPosition> getStartPositions() {
+    public Map<String, RankPosition> getStartPositions() {
         return startPositions;
     }
 
-    public void setEndPositions(HashMap<String, RankPosition> endPositions) {
-        this.endPositions = endPositions;
+    public void setEndPositions(Map<String, RankPosition> endPositions) {
+        checkNotSnapshot();
+        this.endPositions.clear();
+        this.endPositions.putAll(sharePositions(endPositions));
+        staleEnds.clear();
     }
 
-    public HashMap<String, RankPosition> getEndPositions() {
+    public Map<String, RankPosition> getEndPositions() {
+        updateEndPositions();
         return endPositions;
     }
 
     public void setCounts(int counts) {
+        markEdited();
         this.moveCounts = counts;
     }
 
@@ -275,53 +741,358 @@ public class Move {
         return moveCounts;
     }
 
+    /**
+     * Returns the number of edits made to this move, used to invalidate cached evaluation state
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the end positions as they were last published.  Other threads may read the result
+     * without locking, but must not modify it.
+     *
+     * @return - the published end positions, or null if the move has been edited or a rank has
+     * been renamed since they were published, in which case whoever holds the drill's lock should
+     * call publishPositions
+     */
+    public HashMap<String, RankPosition> getPublishedPositions() {
+        //read the versions first, since they are written after the positions
+        if (publishedVersion != version || publishedRenames != ranks.getRenameCount()) {
+            return null;
+        }
+        return publishedPositions;
+    }
+
+    /**
+     * Publishes the current end positions for other threads to read.  The positions are frozen,
+     * so the published map shares them rather than copying them.  Must be called while holding
+     * the drill's lock.
+     *
+     * @return - the newly published end positions
+     */
+    public HashMap<String, RankPosition> publishPositions() {
+        HashMap<String, RankPosition> oldPositions = publishedPositions;
+        if (oldPositions != null && publishedVersion == version && publishedRenames == ranks.getRenameCount()) {
+            return oldPositions;
+        }
+
+        HashMap<String, RankPosition> newPositions = new HashMap<String, RankPosition>(getEndPositions());
+
+        publishedPositions = newPositions;
+        publishedRenames = ranks.getRenameCount();
+        publishedVersion = version;
+        return newPositions;
+    }
+
+    /**
+     * Records that the move has changed, discarding any positions cached for the old version
+     */
+    private void markEdited() {
+        checkNotSnapshot();
+        version++;
+        if (keyframes != null) {
+            KeyframeCache.getInstance().remove(keyframes);
+            keyframes = null;
+        }
+    }
+
+    /**
+     * Returns the position of every rank after the given number of counts of the move
+     *
+     * @param counts - the number of counts into the move
+     * @return - a new map of rank name to position
+     */
     public HashMap<String, RankPosition> getIntermediatePositions(int counts) {
-        HashMap<String, RankPosition> itermediatePos = new HashMap<String, RankPosition>();
+        KeyframeTable table = getKeyframes();
+        if (table != null) {
+            HashMap<String, RankPosition> frame = table.getFrame(counts, ranks);
+            if (frame != null) {
+                return frame;
+            }
+        }
+
+        //the move is too large to cache, so walk each rank's cursor instead
+        return evaluateRanks(counts);
+    }
 
-        for (String rankName : startPositions.keySet()) {
-            itermediatePos.put(rankName, getPositionFromCommandsAndCounts(rankName, counts));
+    /**
+     * Returns the ranks of the move in the order {@link #evaluate(int, PositionBuffer)} writes them,
+     * which is sorted by rank name so moves with the same ranks share the same order
+     *
+     * @return - a new array of rank names, where index i is the rank stored in slot i of each count
+     */
+    public String[] getRankOrder() {
+        int[] rankIds = getSortedRanks();
+        String[] rankNames = new String[rankIds.length];
+        for (int i = 0; i < rankIds.length; i++) {
+            rankNames[i] = ranks.getName(rankIds[i]);
         }
+        return rankNames;
+    }
 
-        return itermediatePos;
+    /**
+     * Writes the position of every rank at the given count into a buffer, with rank i of
+     * {@link #getRankOrder()} in slot i.  The buffer can be reused from frame to frame, so
+     * drawing or exporting a move this way does not build a map or allocate positions.
+     *
+     * @param counts - the number of counts into the move
+     * @param positions - the buffer to write into, with room for at least one slot per rank
+     */
+    public void evaluate(int counts, PositionBuffer positions) {
+        evaluate(counts, counts, positions);
+    }
+
+    /**
+     * Writes the position of every rank at every count in a range into a buffer.  The slot of
+     * rank i of {@link #getRankOrder()} at a count is (count - firstCount) * (number of ranks) + i.
+     * Counts outside the move are clamped to its start or end positions.
+     *
+     * @param firstCount - the first count to evaluate
+     * @param lastCount - the last count to evaluate, inclusive
+     * @param positions - the buffer to write into, with room for every rank at every count in the range
+     */
+    public void evaluate(final int firstCount, final int lastCount, final PositionBuffer positions) {
+        final int[] rankIds = getSortedRanks();
+        int size = (lastCount - firstCount + 1) * rankIds.length;
+        if (lastCount < firstCount || positions.getCapacity() < size) {
+            throw new IllegalArgumentException("Counts " + firstCount + " to " + lastCount + " need "
+                    + Math.max(size, 0) + " slots, but the buffer has " + positions.getCapacity() + ".");
+        }
+
+        //whole moves that fit in the cache are copied straight out of the keyframe table
+        KeyframeTable table = getKeyframes();
+        if (table != null && table.copyFrames(firstCount, lastCount, positions)) {
+            return;
+        }
+
+        final RankCursor[] rankCursors = getCursors(rankIds);
+        ParallelEvaluation.forEach(rankIds.length, new ParallelEvaluation.RangeTask() {
+            @Override
+            public void run(int first, int last) {
+                if (first >= last) {
+                    return;
+                }
+                RankPosition scratch = new RankPosition(startPositions.get(rankIds[first]));
+                for (int rank = first; rank < last; rank++) {
+                    for (int count = firstCount; count <= lastCount; count++) {
+                        rankCursors[rank].getPosition(count, scratch);
+                        positions.store((count - firstCount) * rankIds.length + rank, scratch);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the position of every rank part of the way through a count into a buffer, with
+     * rank i of {@link #getRankOrder()} in slot i, for drawing playback more often than once per
+     * count.  Whole counts are copied from the keyframe table the same way as
+     * {@link #evaluate(int, PositionBuffer)}; anything in between is found from each rank's
+     * compiled commands straight into the buffer.
+     *
+     * @param counts - the number of counts into the move, which may include a fraction of a count
+     * @param positions - the buffer to write into, with room for at least one slot per rank
+     */
+    public void evaluate(final float counts, final PositionBuffer positions) {
+        if (counts == (int) counts) {
+            evaluate((int) counts, positions);
+            return;
+        }
+
+        final int[] rankIds = getSortedRanks();
+        if (positions.getCapacity() < rankIds.length) {
+            throw new IllegalArgumentException("Count " + counts + " needs " + rankIds.length
+                    + " slots, but the buffer has " + positions.getCapacity() + ".");
+        }
+
+        //drills too small to split are evaluated right here, so drawing a frame allocates nothing
+        if (!ParallelEvaluation.shouldSplit(rankIds.length)) {
+            for (int rank = 0; rank < rankIds.length; rank++) {
+                getCursor(rankIds[rank]).store(counts, positions, rank);
+            }
+            return;
+        }
+
+        final RankCursor[] rankCursors = getCursors(rankIds);
+        ParallelEvaluation.forEach(rankIds.length, new ParallelEvaluation.RangeTask() {
+            @Override
+            public void run(int first, int last) {
+                for (int rank = first; rank < last; rank++) {
+                    rankCursors[rank].store(counts, positions, rank);
+                }
+            }
+        });
     }
 
-    //TODO: not terribly efficient because it starts from the beginning of the move each time this is called,
-    // and this is called from each frame of the animation
-    private RankPosition getPositionFromCommandsAndCounts(String rankName, int counts) {
-        RankPosition position = new RankPosition(startPositions.get(rankName));
-        for (int i = 0; i < commands.get(rankName).size() && counts > 0; i++) {
-            CommandPair command = commands.get(rankName).get(i);
-            int countsLeft = counts - command.getCounts();
+    /**
+     * Returns the rank IDs sorted by rank name, sorting them again only if the move has changed
+     * or a rank has been renamed
+     */
+    private int[] getSortedRanks() {
+        if (rankOrder == null || rankOrderVersion != version || rankOrderRenames != ranks.getRenameCount()
+                || rankOrder.length != startPositions.size()) {
+            Integer[] sortedIds = new Integer[startPositions.size()];
+            int rank = 0;
+            for (int rankId = 0; rankId < startPositions.capacity(); rankId++) {
+                if (startPositions.get(rankId) != null) {
+                    sortedIds[rank++] = rankId;
+                }
+            }
+            Arrays.sort(sortedIds, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return ranks.getName(a).compareTo(ranks.getName(b));
+                }
+            });
+
+            rankOrder = new int[sortedIds.length];
+            for (rank = 0; rank < sortedIds.length; rank++) {
+                rankOrder[rank] = sortedIds[rank];
+            }
+            rankOrderVersion = version;
+            rankOrderRenames = ranks.getRenameCount();
+        }
+        return rankOrder;
+    }
 
-            //only do a portion of the command
-            if (countsLeft < 0) {
-                movePortionCounts(command.getCommand(), position, counts, command.getCounts(), command.getDest());
+    /**
+     * Gets the positions of every rank part of the way through a count, for drawing playback
+     * more often than once per count.  Whole counts come from the keyframe table; anything in
+     * between is found from each rank's compiled commands without replaying the move.
+     *
+     * @param counts - the number of counts into the move, which may include a fraction of a count
+     * @return - a new map of rank name to position
+     */
+    public HashMap<String, RankPosition> getIntermediatePositions(float counts) {
+        if (counts == (int) counts) {
+            return getIntermediatePositions((int) counts);
+        }
+        return evaluateRanks(counts);
+    }
+
+    /**
+     * Evaluates every rank at the given count with its cursor, splitting the ranks across
+     * threads for large drills.  Each rank's result goes into its own array slot, and the
+     * slots are put into the map on this thread once every rank is done.
+     */
+    private HashMap<String, RankPosition> evaluateRanks(final float counts) {
+        int[] rankIds = getSortedRanks();
+        final RankCursor[] rankCursors = getCursors(rankIds);
+        final RankPosition[] positions = new RankPosition[rankIds.length];
+        ParallelEvaluation.forEach(rankIds.length, new ParallelEvaluation.RangeTask() {
+            @Override
+            public void run(int first, int last) {
+                for (int rank = first; rank < last; rank++) {
+                    positions[rank] = rankCursors[rank].getPosition(counts);
+                }
             }
-            //else do full command (as part of the chain that leads up to the current one
-            else {
-                //moveFullCounts(command, position);
-                movePortionCounts(command.getCommand(), position, command.getCounts(), command.getCounts(), command.getDest());
+        });
+
+        HashMap<String, RankPosition> itermediatePos = new HashMap<String, RankPosition>();
+        for (int rank = 0; rank < rankIds.length; rank++) {
+            itermediatePos.put(ranks.getName(rankIds[rank]), positions[rank]);
+        }
+        return itermediatePos;
+    }
+
+    /**
+     * Returns the keyframe table of the move, building the table if this version of the move
+     * has not been evaluated yet.  The table may still be released by the cache at any time.
+     *
+     * @return - the keyframe table, or null if the move is too large to cache
+     */
+    private KeyframeTable getKeyframes() {
+        KeyframeCache cache = KeyframeCache.getInstance();
+        if (keyframes == null || !keyframes.isValid(version)) {
+            if (!cache.fits(KeyframeTable.estimateSize(this))) {
+                return null;
             }
-            counts = counts - command.getCounts();
 
+            int[] rankIds = getSortedRanks();
+            keyframes = KeyframeTable.build(this, rankIds, getCursors(rankIds));
+            cache.add(keyframes);
+        }
+        else {
+            cache.touch(keyframes);
+        }
+
+        return keyframes;
+    }
+
+    /**
+     * Returns the playback cursor for the given rank, creating it if this is the first time the
+     * rank has been evaluated.  The cursor keeps the rank's compiled commands between calls, so
+     * any count can be evaluated without starting from the beginning of the move.
+     */
+    private RankCursor getCursor(int rankId) {
+        if (rankId >= cursors.length) {
+            cursors = Arrays.copyOf(cursors, Math.max(rankId + 1, startPositions.capacity()));
+        }
+        RankCursor cursor = cursors[rankId];
+        if (cursor == null) {
+            cursor = new RankCursor(this, rankId);
+            cursors[rankId] = cursor;
         }
+        return cursor;
+    }
 
-        return position;
+    /**
+     * Returns the cursors of the given ranks, in the same order.  The cursor array is only touched
+     * here, on the calling thread, so the cursors can then be handed to other threads.
+     */
+    private RankCursor[] getCursors(int[] rankIds) {
+        RankCursor[] rankCursors = new RankCursor[rankIds.length];
+        for (int i = 0; i < rankIds.length; i++) {
+            rankCursors[i] = getCursor(rankIds[i]);
+        }
+        return rankCursors;
     }
 
-    private RankPosition getPositionFromCommands(String rankName) {
+    private RankPosition getPositionFromCommands(int rankId) {
         //create a new endPosition object from the current start position
-        RankPosition endPosition = new RankPosition(startPositions.get(rankName));
-        for (int i = 0; i < commands.get(rankName).size(); i++) {
-            int numcounts = commands.get(rankName).get(i).getCounts();
-            CommandPair cmd = commands.get(rankName).get(i);
-            movePortionCounts(commands.get(rankName).get(i).getCommand(), endPosition, numcounts, numcounts,cmd.getDest());
+        RankPosition endPosition = new RankPosition(startPositions.get(rankId));
+
+        //commands that only march or slide the rank just shift it, without running each command
+        Translation translation = getTranslation(rankId);
+        if (translation != null) {
+            translation.apply(endPosition);
+            return endPosition;
+        }
+
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        for (int i = 0; i < rankCommands.size(); i++) {
+            int numcounts = rankCommands.get(i).getCounts();
+            CommandPair cmd = rankCommands.get(i);
+            movePortionCounts(rankCommands.get(i).getCommand(), endPosition, numcounts, numcounts,cmd.getDest());
         }
         return endPosition;
     }
 
+    /**
+     * Returns the steps of a rank if its commands only march, slide, mark time or halt.  Those
+     * commands move every point of the rank by the same amount wherever the rank starts, so
+     * the end position is the start position shifted by the steps, whatever the start is.
+     * The classification is kept until the commands of the rank change.
+     *
+     * @param rankId - the rank whose commands to classify
+     * @return - the steps, or null if any command turns, bends or resizes the rank
+     */
+    private Translation getTranslation(int rankId) {
+        ArrayList<CommandPair> rankCommands = commands.get(rankId);
+        if (rankId >= translations.length) {
+            translations = Arrays.copyOf(translations, Math.max(rankId + 1, commands.capacity()));
+        }
+        Translation translation = translations[rankId];
+        if (translation == null || translation.commands != rankCommands) {
+            translation = new Translation(rankCommands);
+            translations[rankId] = translation;
+        }
+        return translation.translationOnly ? translation : null;
+    }
+
     //TODO: can definitely combine these two.  is it worth it?
-    private void movePortionCounts(int command, RankPosition endPosition, int counts,
+    static void movePortionCounts(int command, RankPosition endPosition, int counts,
             int totalcounts, RankPosition dest) {
 
         switch (command){
@@ -485,7 +1256,7 @@ public class Move {
                 return false;
             }
         }
-        else if (!endPositions.equals(other.endPositions)) {
+        else if (!getEndPositions().equals(other.getEndPositions())) {
             return false;
         }
 
@@ -514,7 +1285,7 @@ public class Move {
     @Override
     public String toString() {
         return "Move [commands=" + commands + ", startPositions="
-                + startPositions + ", endPositions=" + endPositions
+                + startPositions + ", endPositions=" + getEndPositions()
                 + ", comments=" + comments + ", moveCounts=" + moveCounts + "]";
     }
 
@@ -540,17 +1311,14 @@ public class Move {
 
         //add the rank tags with info
         //TODO: NOTE: assuming that each hashmap has the same ranks
-        //get the start position iterator
-        Set<String> startKeys = startPositions.keySet();
-        Iterator<String> startIterator = startKeys.iterator();
-
-        //get the commands iterator
-        Set<String> commandKeys = commands.keySet();
-        Iterator<String> commandIterator = commandKeys.iterator();
+        for (int rankId = 0; rankId < startPositions.capacity(); rankId++) {
+            RankPosition startPosition = startPositions.get(rankId);
+            if (startPosition == null) {
+                continue;
+            }
 
-        while (startIterator.hasNext()) {
             //get the rank name
-            String rankName = startIterator.next();
+            String rankName = ranks.getName(rankId);
 
             //add the rank parent tag
             Element rankTag = document.createElement(XMLConstants.RANK);
@@ -565,18 +1333,18 @@ public class Move {
             rankNameTag.appendChild(rankNameText);
 
             //add the start position tag
-            Element startPositionTag = startPositions.get(rankName).convertToXML(document, XMLConstants.START_POS);
+            Element startPositionTag = startPosition.convertToXML(document, XMLConstants.START_POS);
             rankTag.appendChild(startPositionTag);
 
             //add the command tags
-            ArrayList<CommandPair> commandList = commands.get(rankName);
+            ArrayList<CommandPair> commandList = commands.get(rankId);
             for (int i = 0; i < commandList.size(); i++) {
                 Element commandTag = commandList.get(i).convertToXML(document, i);
                 rankTag.appendChild(commandTag);
             }
 
             //add the end position tag
-            Element endPositionTag = endPositions.get(rankName).convertToXML(document, XMLConstants.END_POS);
+            Element endPositionTag = getEndPosition(rankId).convertToXML(document, XMLConstants.END_POS);
             rankTag.appendChild(endPositionTag);
         }
 
@@ -589,4 +1357,67 @@ public class Move {
         commentsTag.appendChild(commentsText);
         return moveTag;
     }
+
+    /**
+     * The steps taken by a list of commands that only march, slide, mark time or halt
+     */
+    private static class Translation {
+
+        // The command list this was classified from, to notice when the list is replaced
+        private final ArrayList<CommandPair> commands;
+
+        private final boolean translationOnly;
+
+        // The sideways and forward distance of all the steps together, which is worked out once
+        // for the command list so each new start position is shifted in one step.  CommandProgram
+        // sums the steps in the same order, so playback ends exactly on the end position.
+        private final float deltaX;
+        private final float deltaY;
+
+        Translation(ArrayList<CommandPair> commands) {
+            this.commands = commands;
+
+            float deltaX = 0;
+            float deltaY = 0;
+            boolean translationOnly = true;
+            for (CommandPair command : commands) {
+                int counts = command.getCounts();
+                switch (command.getCommand()) {
+                    case CommandPair.MT:
+                    case CommandPair.HALT:
+                        break;
+                    case CommandPair.FM:
+                        deltaY += MarchingConstants.STANDARD_STEP_SIZE * counts;
+                        break;
+                    case CommandPair.BM:
+                        deltaY += MarchingConstants.STANDARD_STEP_SIZE * counts * -1;
+                        break;
+                    case CommandPair.RS:
+                        deltaX += MarchingConstants.STANDARD_STEP_SIZE * counts * -1;
+                        break;
+                    case CommandPair.LS:
+                        deltaX += MarchingConstants.STANDARD_STEP_SIZE * counts;
+                        break;
+                    default:
+                        translationOnly = false;
+                        break;
+                }
+            }
+            this.translationOnly = translationOnly;
+            this.deltaX = deltaX;
+            this.deltaY = deltaY;
+        }
+
+        /**
+         * Shifts the position by the whole distance of the steps, in place
+         */
+        void apply(RankPosition position) {
+            if (deltaX != 0) {
+                position.incrementPointsXValue(deltaX);
+            }
+            if (deltaY != 0) {
+                position.incrementPointsYValue(deltaY);
+            }
+        }
+    }
 }
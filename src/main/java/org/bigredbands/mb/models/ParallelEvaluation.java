@@ -0,0 +1,104 @@
+package org.bigredbands.mb.models;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits work over ranks (or moves) across the common ForkJoin pool once there are enough
+ * of them for the split to pay for itself.  Each piece of work is handed a range of indices
+ * and writes only to its own slots of the caller's arrays, so the results can be merged by
+ * the caller afterwards without any locking.
+ */
+public class ParallelEvaluation {
+
+    // The smallest number of ranks (or moves, when adding a rank) worth splitting across threads.
+    // This is an estimate, not a measurement; ParallelEvaluationBenchmark finds the crossover on a
+    // machine with more than one processor, and setThreshold applies it
+    public static final int DEFAULT_THRESHOLD = 48;
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    /**
+     * The work done on one range of indices
+     */
+    interface RangeTask {
+        /**
+         * @param first - the first index of the range
+         * @param last - one past the last index of the range
+         */
+        void run(int first, int last);
+    }
+
+    /**
+     * Returns the smallest number of ranks that will be evaluated in parallel
+     */
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets the smallest number of ranks that will be evaluated in parallel.  Use
+     * Integer.MAX_VALUE to always evaluate on the calling thread.
+     *
+     * @param threshold - the new threshold
+     */
+    public static void setThreshold(int threshold) {
+        ParallelEvaluation.threshold = threshold;
+    }
+
+    /**
+     * Checks if the given number of items is large enough to split across the pool
+     */
+    static boolean shouldSplit(int size) {
+        return size >= threshold && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Runs the task over the indices 0 to size, in parallel if the size passes the threshold
+     * and on the calling thread otherwise.  Returns once every index has been processed.
+     *
+     * @param size - the number of indices
+     * @param task - the work to do for each range of indices
+     */
+    static void forEach(int size, RangeTask task) {
+        if (!shouldSplit(size)) {
+            task.run(0, size);
+            return;
+        }
+
+        //aim for a few pieces per worker so uneven ranks still balance out
+        int pieceSize = Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        ForkJoinPool.commonPool().invoke(new RangeAction(task, 0, size, pieceSize));
+    }
+
+    /**
+     * Splits a range in half until it is small enough to run directly
+     */
+    private static class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RangeTask task;
+        private final int first;
+        private final int last;
+        private final int pieceSize;
+
+        RangeAction(RangeTask task, int first, int last, int pieceSize) {
+            this.task = task;
+            this.first = first;
+            this.last = last;
+            this.pieceSize = pieceSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first <= pieceSize) {
+                task.run(first, last);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new RangeAction(task, first, middle, pieceSize),
+                    new RangeAction(task, middle, last, pieceSize));
+        }
+    }
+}
@@ -6,8 +6,11 @@ import org.w3c.dom.Text;
 
 public class Point {
 
-    private Float x;
-    private Float y;
+    private float x;
+    private float y;
+
+    // Set when the rank position the point belongs to is frozen
+    private boolean frozen;
 
     public Point(float x, float y){
         this.x = x;
@@ -26,11 +29,39 @@ public class Point {
         return new Point(this.x*(1-t) + b.x*t, this.y*(1-t) + b.y*t);
     }
 
+    /**
+     * Moves this point toward the given coordinates, the same way as
+     * {@link #interpolate(Point, float)} but without creating a new point
+     *
+     * @param bX - the x coordinate to move toward
+     * @param bY - the y coordinate to move toward
+     * @param t - the fraction of the way to move, from 0 to 1
+     */
+    public void interpolateTo(float bX, float bY, float t) {
+        checkNotFrozen();
+        this.x = this.x*(1-t) + bX*t;
+        this.y = this.y*(1-t) + bY*t;
+    }
+
     public void setPoint(float x, float y){
+        checkNotFrozen();
         this.x = x;
         this.y = y;
     }
 
+    /**
+     * Stops the point from being changed, called when the rank position it belongs to is frozen
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The point belongs to a shared rank position and cannot be changed; change a copy instead.");
+        }
+    }
+
     @Override
     public String toString() {
         return "Point [x=" + x + ", y=" + y + "]";
@@ -72,7 +103,7 @@ public class Point {
         pointTag.appendChild(xTag);
 
         //add the coordinate value to the x coordinate tag
-        Text xText = document.createTextNode(x.toString());
+        Text xText = document.createTextNode(Float.toString(x));
         xTag.appendChild(xText);
 
         //add the y coordinate tag
@@ -80,7 +111,7 @@ public class Point {
         pointTag.appendChild(yTag);
 
         //add the coordinate value to the y coordinate tag
-        Text yText = document.createTextNode(y.toString());
+        Text yText = document.createTextNode(Float.toString(y));
         yTag.appendChild(yText);
 
         return pointTag;
@@ -0,0 +1,163 @@
+package org.bigredbands.mb.models;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Stores many rank positions in flat primitive arrays, one entry per slot, instead of
+ * as separate {@link RankPosition} and {@link Point} objects.  Positions are moved in
+ * and out with {@link #store(int, RankPosition)} and {@link #load(int, RankPosition)},
+ * or a whole frame at a time with {@link #load(String[], Map)}, which reuse the caller's
+ * objects, so evaluating or copying a whole move into a buffer does not allocate anything
+ * per rank.
+ */
+public class PositionBuffer {
+
+    // The coordinates of each slot
+    private final float[] frontX;
+    private final float[] frontY;
+    private final float[] midX;
+    private final float[] midY;
+    private final float[] endX;
+    private final float[] endY;
+
+    // The line type of each slot
+    private final int[] lineType;
+
+    /**
+     * Creates a buffer with room for the given number of positions
+     *
+     * @param capacity - the number of slots in the buffer
+     */
+    public PositionBuffer(int capacity) {
+        frontX = new float[capacity];
+        frontY = new float[capacity];
+        midX = new float[capacity];
+        midY = new float[capacity];
+        endX = new float[capacity];
+        endY = new float[capacity];
+        lineType = new int[capacity];
+    }
+
+    /**
+     * Returns the number of slots in the buffer
+     */
+    public int getCapacity() {
+        return lineType.length;
+    }
+
+    /**
+     * Writes the given position into a slot
+     *
+     * @param slot - the slot to write
+     * @param position - the position to store
+     */
+    public void store(int slot, RankPosition position) {
+        frontX[slot] = position.getFront().getX();
+        frontY[slot] = position.getFront().getY();
+        midX[slot] = position.getMidpoint().getX();
+        midY[slot] = position.getMidpoint().getY();
+        endX[slot] = position.getEnd().getX();
+        endY[slot] = position.getEnd().getY();
+        lineType[slot] = position.getLineType();
+    }
+
+    /**
+     * Reads a slot into an existing position object, overwriting its points and line type
+     *
+     * @param slot - the slot to read
+     * @param position - the position to write into
+     */
+    public void load(int slot, RankPosition position) {
+        position.getFront().setPoint(frontX[slot], frontY[slot]);
+        position.getMidpoint().setPoint(midX[slot], midY[slot]);
+        position.getEnd().setPoint(endX[slot], endY[slot]);
+        position.setLineType(lineType[slot]);
+    }
+
+    /**
+     * Reads the first slots into a map of rank name to position, overwriting the position objects
+     * already in the map so that reading frame after frame into the same map does not allocate.
+     * A position is only created for a rank the map does not have yet, and ranks not named are
+     * taken out of the map.
+     *
+     * @param rankNames - the rank in each slot, starting from slot 0
+     * @param positions - the map to write into, whose positions must not be frozen or shared
+     */
+    public void load(String[] rankNames, Map<String, RankPosition> positions) {
+        for (int slot = 0; slot < rankNames.length; slot++) {
+            RankPosition position = positions.get(rankNames[slot]);
+            if (position == null) {
+                position = getPosition(slot);
+                positions.put(rankNames[slot], position);
+            }
+            else {
+                load(slot, position);
+            }
+        }
+
+        //every rank named is in the map now, so anything more is left over from an earlier frame
+        if (positions.size() > rankNames.length) {
+            positions.keySet().retainAll(Arrays.asList(rankNames));
+        }
+    }
+
+    /**
+     * Returns a new position object holding the contents of a slot
+     *
+     * @param slot - the slot to read
+     * @return - a position the caller may keep or modify
+     */
+    public RankPosition getPosition(int slot) {
+        return new RankPosition(new Point(frontX[slot], frontY[slot]),
+                new Point(midX[slot], midY[slot]),
+                new Point(endX[slot], endY[slot]),
+                lineType[slot]);
+    }
+
+    /**
+     * Copies a range of slots from this buffer into another one
+     *
+     * @param fromSlot - the first slot to copy from this buffer
+     * @param destination - the buffer to copy into
+     * @param toSlot - the first slot to write in the destination
+     * @param length - the number of slots to copy
+     */
+    public void copyTo(int fromSlot, PositionBuffer destination, int toSlot, int length) {
+        System.arraycopy(frontX, fromSlot, destination.frontX, toSlot, length);
+        System.arraycopy(frontY, fromSlot, destination.frontY, toSlot, length);
+        System.arraycopy(midX, fromSlot, destination.midX, toSlot, length);
+        System.arraycopy(midY, fromSlot, destination.midY, toSlot, length);
+        System.arraycopy(endX, fromSlot, destination.endX, toSlot, length);
+        System.arraycopy(endY, fromSlot, destination.endY, toSlot, length);
+        System.arraycopy(lineType, fromSlot, destination.lineType, toSlot, length);
+    }
+
+    public float getFrontX(int slot) {
+        return frontX[slot];
+    }
+
+    public float getFrontY(int slot) {
+        return frontY[slot];
+    }
+
+    public float getMidX(int slot) {
+        return midX[slot];
+    }
+
+    public float getMidY(int slot) {
+        return midY[slot];
+    }
+
+    public float getEndX(int slot) {
+        return endX[slot];
+    }
+
+    public float getEndY(int slot) {
+        return endY[slot];
+    }
+
+    public int getLineType(int slot) {
+        return lineType[slot];
+    }
+}
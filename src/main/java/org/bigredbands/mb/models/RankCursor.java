@@ -0,0 +1,112 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+
+/**
+ * Evaluates the position of one rank within a move.  The commands of the rank are
+ * compiled into a {@link CommandProgram} the first time the rank is evaluated, so any
+ * count, in any order, costs a binary search plus one partial command instead of a
+ * replay of the whole command list.  The program is recompiled whenever the move is edited.
+ */
+class RankCursor {
+
+    // The move and rank this cursor walks through
+    private final Move move;
+    private final int rankId;
+
+    // The state of the move the program was compiled from, used to detect edits
+    private int moveVersion;
+    private RankPosition startPosition;
+    private ArrayList<CommandPair> commands;
+
+    // The compiled commands of the rank
+    private CommandProgram program;
+
+    // The position written by store before it is copied into a buffer, created on first use
+    private RankPosition scratch;
+
+    /**
+     * Creates a cursor for the given rank
+     *
+     * @param move - the move containing the rank
+     * @param rankName - the rank to evaluate
+     */
+    RankCursor(Move move, String rankName) {
+        this(move, move.getRankRegistry().getId(rankName));
+    }
+
+    /**
+     * Creates a cursor for the rank with the given ID
+     *
+     * @param move - the move containing the rank
+     * @param rankId - the ID of the rank in the move's registry
+     */
+    RankCursor(Move move, int rankId) {
+        this.move = move;
+        this.rankId = rankId;
+        compile();
+    }
+
+    /**
+     * Returns the position of the rank after the given number of counts of the move
+     *
+     * @param counts - the number of counts into the move, which may include a fraction of a count
+     * @return - a new position object that the caller may keep or modify
+     */
+    RankPosition getPosition(float counts) {
+        RankPosition position = new RankPosition(move.getStartPosition(rankId));
+        getPosition(counts, position);
+        return position;
+    }
+
+    /**
+     * Writes the position of the rank after the given number of counts of the move into
+     * an existing position object
+     *
+     * @param counts - the number of counts into the move, which may include a fraction of a count
+     * @param position - the position to overwrite with the result
+     */
+    void getPosition(float counts, RankPosition position) {
+        //if the move was edited, compile the commands again
+        if (isStale()) {
+            compile();
+        }
+        program.getPosition(counts, position);
+    }
+
+    /**
+     * Writes the position of the rank after the given number of counts of the move into a slot of
+     * a buffer, going through a position object kept by the cursor so nothing is allocated.  A
+     * cursor is only evaluated by one thread at a time, like the move it belongs to.
+     *
+     * @param counts - the number of counts into the move, which may include a fraction of a count
+     * @param positions - the buffer to write into
+     * @param slot - the slot to write
+     */
+    void store(float counts, PositionBuffer positions, int slot) {
+        if (scratch == null) {
+            scratch = new RankPosition(move.getStartPosition(rankId));
+        }
+        getPosition(counts, scratch);
+        positions.store(slot, scratch);
+    }
+
+    /**
+     * Checks if the move has been edited since the program was compiled
+     */
+    private boolean isStale() {
+        return moveVersion != move.getVersion()
+                || startPosition != move.getStartPosition(rankId)
+                || commands != move.getCommands(rankId);
+    }
+
+    /**
+     * Compiles the current commands of the rank
+     */
+    private void compile() {
+        moveVersion = move.getVersion();
+        startPosition = move.getStartPosition(rankId);
+        commands = move.getCommands(rankId);
+        program = CommandProgram.compile(startPosition, commands);
+    }
+}
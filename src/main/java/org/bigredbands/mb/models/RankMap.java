@@ -0,0 +1,249 @@
+package org.bigredbands.mb.models;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Per-rank values of a move, kept in an array indexed by the ID each rank has in a
+ * {@link RankRegistry}.  The move itself reads and writes the array by ID; everything else sees
+ * an ordinary map from rank name to value, which looks the name up in the registry first.  The
+ * map iterates in ID order, which is the order the ranks were first added to the drill.
+ *
+ * @param <V> - the type of value stored for each rank
+ */
+class RankMap<V> extends AbstractMap<String, V> {
+
+    private final RankRegistry registry;
+
+    // The value of each rank ID, or null if the rank is not in the map
+    private Object[] values;
+
+    // The number of ranks in the map
+    private int size = 0;
+
+    // True while another map may be reading the same array, in which case the array is copied
+    // before this map next changes it
+    private boolean shared = false;
+
+    RankMap(RankRegistry registry) {
+        this.registry = registry;
+        this.values = new Object[Math.max(registry.size(), 4)];
+    }
+
+    /**
+     * Creates a map that shares the array of another map until either of them is changed, so a
+     * snapshot of a move, or a new move starting where another ends, costs nothing until one of
+     * them is edited.  The ranks are named by the given registry, which has to hand out the same
+     * IDs as the registry of the other map.
+     */
+    RankMap(RankMap<V> existingMap, RankRegistry registry) {
+        this.registry = registry;
+        this.values = existingMap.values;
+        this.size = existingMap.size;
+        this.shared = true;
+        existingMap.shared = true;
+    }
+
+    RankRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Returns the value of a rank ID, or null if the rank is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    V get(int id) {
+        return id >= 0 && id < values.length ? (V) values[id] : null;
+    }
+
+    /**
+     * Sets the value of a rank ID, or removes the rank if the value is null
+     *
+     * @return - the previous value of the rank
+     */
+    V put(int id, V value) {
+        if (id >= values.length) {
+            if (value == null) {
+                return null;
+            }
+            values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+            shared = false;
+        }
+        else if (shared) {
+            values = values.clone();
+            shared = false;
+        }
+        V oldValue = get(id);
+        values[id] = value;
+        if (oldValue == null && value != null) {
+            size++;
+        }
+        else if (oldValue != null && value == null) {
+            size--;
+        }
+        return oldValue;
+    }
+
+    /**
+     * Returns the number of IDs the array has room for, which every ID in the map is below
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof String ? get(registry.getId((String) key)) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(String key, V value) {
+        if (value == null) {
+            throw new NullPointerException("A rank cannot be mapped to null; remove it instead.");
+        }
+        return put(registry.register(key), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int id = registry.getId((String) key);
+        return id < 0 ? null : put(id, null);
+    }
+
+    @Override
+    public void clear() {
+        if (shared) {
+            values = new Object[values.length];
+            shared = false;
+        }
+        else {
+            Arrays.fill(values, null);
+        }
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Walks the filled slots of the array in ID order
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String, V>> {
+
+        // The next filled slot, or the length of the array if there is none
+        private int next = findSlot(0);
+
+        // The slot returned last, which remove clears
+        private int current = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = findSlot(next + 1);
+            return new Entry(current);
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            put(current, null);
+            current = -1;
+        }
+
+        private int findSlot(int id) {
+            while (id < values.length && values[id] == null) {
+                id++;
+            }
+            return id;
+        }
+    }
+
+    /**
+     * A rank of the map, which writes through to the array
+     */
+    private class Entry implements Map.Entry<String, V> {
+
+        private final int id;
+
+        Entry(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getKey() {
+            return registry.getName(id);
+        }
+
+        @Override
+        public V getValue() {
+            return get(id);
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (value == null) {
+                throw new NullPointerException("A rank cannot be mapped to null; remove it instead.");
+            }
+            return put(id, value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            return getKey().equals(other.getKey()) && getValue().equals(other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
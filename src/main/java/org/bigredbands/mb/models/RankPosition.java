@@ -18,9 +18,12 @@ public class RankPosition {
     private Point front;
     private Point end;
     private Point midpoint;
-    private Integer lineType;
+    private int lineType;
     private enum part {HEAD, TAIL};
 
+    // Set once the position is shared between moves, after which it can no longer be changed
+    private boolean frozen;
+
     public RankPosition(Point front, Point end){
         this.front = front;
         this.end = end;
@@ -38,10 +41,53 @@ public class RankPosition {
     }
 
     public RankPosition(RankPosition existingPosition) {
-        this.front = new Point(new Float(existingPosition.getFront().getX()), new Float(existingPosition.getFront().getY()));
-        this.end = new Point(new Float(existingPosition.getEnd().getX()), new Float(existingPosition.getEnd().getY()));
-        this.midpoint = new Point(new Float(existingPosition.getMidpoint().getX()), new Float(existingPosition.getMidpoint().getY()));
-        this.lineType = new Integer(existingPosition.getLineType());
+        this.front = new Point(existingPosition.getFront().getX(), existingPosition.getFront().getY());
+        this.end = new Point(existingPosition.getEnd().getX(), existingPosition.getEnd().getY());
+        this.midpoint = new Point(existingPosition.getMidpoint().getX(), existingPosition.getMidpoint().getY());
+        this.lineType = existingPosition.getLineType();
+    }
+
+    /**
+     * Copies the coordinates and line type of another position into this one without
+     * allocating any new objects
+     *
+     * @param existingPosition - the position to copy
+     */
+    public void set(RankPosition existingPosition) {
+        checkNotFrozen();
+        front.setPoint(existingPosition.getFront().getX(), existingPosition.getFront().getY());
+        end.setPoint(existingPosition.getEnd().getX(), existingPosition.getEnd().getY());
+        midpoint.setPoint(existingPosition.getMidpoint().getX(), existingPosition.getMidpoint().getY());
+        lineType = existingPosition.getLineType();
+    }
+
+    /**
+     * Stops the position and its points from being changed, so it can be shared between moves and
+     * threads.  Anything that needs a different position has to change a copy instead.
+     *
+     * @return - this position
+     */
+    public RankPosition freeze() {
+        if (!frozen) {
+            front.freeze();
+            end.freeze();
+            midpoint.freeze();
+            frozen = true;
+        }
+        return this;
+    }
+
+    /**
+     * Checks if the position can no longer be changed
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The rank position is shared and cannot be changed; change a copy instead.");
+        }
     }
 
     /**
@@ -69,16 +115,19 @@ public class RankPosition {
         return lineType;
     }
     public void setLineType(int lineType) {
+        checkNotFrozen();
         this.lineType=lineType;
     }
 
     public void incrementPointsYValue(float stepValue) {
+        checkNotFrozen();
         front.setPoint(front.getX(), front.getY() + stepValue);
         midpoint.setPoint(midpoint.getX(), midpoint.getY() + stepValue);
         end.setPoint(end.getX(), end.getY() + stepValue);
     }
 
     public void incrementPointsXValue(float stepValue) {
+        checkNotFrozen();
         front.setPoint(front.getX() + stepValue, front.getY());
         midpoint.setPoint(midpoint.getX() + stepValue, midpoint.getY());
         end.setPoint(end.getX() + stepValue, end.getY());
@@ -140,6 +189,25 @@ public class RankPosition {
         return true;
     }
 
+    /**
+     * Checks that two positions are identical down to the bit, unlike equals which allows a
+     * small tolerance on every point
+     *
+     * @param other - the position to compare against
+     * @return - true if every point and the line type are exactly the same
+     */
+    public boolean isIdentical(RankPosition other) {
+        return lineType == other.lineType
+                && isIdentical(front, other.front)
+                && isIdentical(midpoint, other.midpoint)
+                && isIdentical(end, other.end);
+    }
+
+    private static boolean isIdentical(Point a, Point b) {
+        return Float.floatToIntBits(a.getX()) == Float.floatToIntBits(b.getX())
+                && Float.floatToIntBits(a.getY()) == Float.floatToIntBits(b.getY());
+    }
+
     public Element convertToXML(Document document, String positionName) {
         //create the position tag
         Element positionTag = document.createElement(positionName);
@@ -161,7 +229,7 @@ public class RankPosition {
         positionTag.appendChild(lineTypeTag);
 
         //add text to the line type tag
-        Text lineTypeText = document.createTextNode(lineType.toString());
+        Text lineTypeText = document.createTextNode(Integer.toString(lineType));
         lineTypeTag.appendChild(lineTypeText);
 
         return positionTag;
@@ -175,31 +243,21 @@ public class RankPosition {
      * @param point - the end of the rank being moved
      */
     public void gateTurnMove(float theta, PART moveable) {
-        //determine length
-        float deltaX = (front.getX()-end.getX());
-        float deltaY = (end.getY()-front.getY());
-        float length = (float) Math.sqrt(Math.pow(deltaX, 2) + Math.pow(deltaY, 2));
-
-        //determine reference angle
-        //float referenceAngle = 0.0f;
-        float referenceAngle = (float)(Math.atan(deltaY/deltaX));
-
-        if (deltaX==0&&deltaY>0){
-            referenceAngle = (float) (Math.PI/2.0f);
-        }else if (deltaX==0&&deltaY<0){
-            referenceAngle=(float) (Math.PI/2.0f)*(-1.0f);
-        }else if (deltaY==0&&deltaX>0){
-            referenceAngle=0.0f;
-        }else if (deltaY==0&&deltaX<0){
-            referenceAngle=(float) Math.PI;
-        }else{
-            referenceAngle = (float) Math.atan(deltaY/deltaX);
-            if (deltaX<0){
-                referenceAngle=(float) Math.PI+referenceAngle;
-            }
-        }
-
+        checkNotFrozen();
+        gateTurnMove(theta, moveable, getGateTurnLength(), getGateTurnReferenceAngle());
+    }
 
+    /**
+     * Gate turns the rank using a length and reference angle that were already computed
+     * for this position, so a turn evaluated at many counts only needs the trig once
+     *
+     * @param theta - the angle to turn through, in radians
+     * @param moveable - the part of the rank that swings around the other
+     * @param length - the length of the rank, from getGateTurnLength
+     * @param referenceAngle - the angle of the rank, from getGateTurnReferenceAngle
+     */
+    public void gateTurnMove(float theta, PART moveable, float length, float referenceAngle) {
+        checkNotFrozen();
         float newX = (float) (length*Math.cos(theta + referenceAngle));
         float newY = (float) (length*Math.sin(theta + referenceAngle));
 
@@ -216,30 +274,104 @@ public class RankPosition {
 
         float midX = (front.getX()+ end.getX())/2.0f;
         float midY = (front.getY()+ end.getY())/2.0f;
-        this.midpoint = new Point(midX, midY);
+        this.midpoint.setPoint(midX, midY);
+    }
+
+    /**
+     * Returns the length of the rank as measured for gate turns
+     */
+    public float getGateTurnLength() {
+        float deltaX = (front.getX()-end.getX());
+        float deltaY = (end.getY()-front.getY());
+        return (float) Math.sqrt(Math.pow(deltaX, 2) + Math.pow(deltaY, 2));
+    }
+
+    /**
+     * Returns the angle of the rank as measured for gate turns
+     */
+    public float getGateTurnReferenceAngle() {
+        return getReferenceAngle((front.getX()-end.getX()), (end.getY()-front.getY()));
     }
 
     public void pinwheelMove(float theta) {
-        //determine length
+        checkNotFrozen();
+        pinwheelMove(theta, getPinwheelPivotX(), getPinwheelPivotY(), getPinwheelHalfLength(), getPinwheelReferenceAngle());
+    }
+
+    /**
+     * Pinwheels the rank using a pivot, half length and reference angle that were already
+     * computed for this position, so a pinwheel evaluated at many counts only needs the trig once
+     *
+     * @param theta - the angle to turn through, in radians
+     * @param pivotX - the x coordinate of the pivot, from getPinwheelPivotX
+     * @param pivotY - the y coordinate of the pivot, from getPinwheelPivotY
+     * @param halfLength - half the length of the rank, from getPinwheelHalfLength
+     * @param referenceAngle - the angle of the rank, from getPinwheelReferenceAngle
+     */
+    public void pinwheelMove(float theta, float pivotX, float pivotY, float halfLength, float referenceAngle) {
+        checkNotFrozen();
+        //a straight rank turns around its center, a curved one around its midpoint
+        this.midpoint.setPoint(pivotX, pivotY);
+
+        float newX = (float) (halfLength*Math.cos(theta + referenceAngle));
+        float newY = (float) (halfLength*Math.sin(theta + referenceAngle));
+
+
+        front.setPoint((midpoint.getX() + newX), (midpoint.getY()+ newY));
+        end.setPoint((midpoint.getX() - newX), (midpoint.getY()- newY));
+
+        //float midX = (front.getX()+ end.getX())/2.0f;
+        //float midY = (front.getY()+ end.getY())/2.0f;
+        //this.midpoint = new Point(midX, midY);
+    }
+
+    /**
+     * Returns the x coordinate of the point the rank turns around in a pinwheel
+     */
+    public float getPinwheelPivotX() {
         if(this.lineType==this.LINE) {
-            float midX = (front.getX()+ end.getX())/2.0f;
-            float midY = (front.getY()+ end.getY())/2.0f;
-            this.midpoint = new Point(midX, midY);
+            return (front.getX()+ end.getX())/2.0f;
         }
+        return midpoint.getX();
+    }
 
+    /**
+     * Returns the y coordinate of the point the rank turns around in a pinwheel
+     */
+    public float getPinwheelPivotY() {
+        if(this.lineType==this.LINE) {
+            return (front.getY()+ end.getY())/2.0f;
+        }
+        return midpoint.getY();
+    }
+
+    /**
+     * Returns half the length of the rank as measured for pinwheels
+     */
+    public float getPinwheelHalfLength() {
         float deltaX = (front.getX()-end.getX());
         float deltaY = (front.getY()-end.getY());
-        float halfLength = (float) ((Math.sqrt( Math.pow(deltaX, 2) + Math.pow(deltaY, 2)))/2.0);
+        return (float) ((Math.sqrt( Math.pow(deltaX, 2) + Math.pow(deltaY, 2)))/2.0);
+    }
 
+    /**
+     * Returns the angle of the rank as measured for pinwheels
+     */
+    public float getPinwheelReferenceAngle() {
+        return getReferenceAngle((front.getX()-end.getX()), (front.getY()-end.getY()));
+    }
+
+    /**
+     * Returns the angle of the vector (deltaX, deltaY) from the positive x axis, in radians
+     */
+    private static float getReferenceAngle(float deltaX, float deltaY) {
         float referenceAngle;
 
         //defining reference Angles - Is this really neccessary? ASK DAVE
         if (deltaX==0&&deltaY>0){
             referenceAngle = (float) (Math.PI/2.0f);
-            System.out.println("Half PI");
         }else if (deltaX==0&&deltaY<0){
             referenceAngle=(float) (Math.PI/2.0f)*(-1.0f);
-            System.out.println("Negative Half PI");
         }else if (deltaY==0&&deltaX>0){
             referenceAngle=0.0f;
         }else if (deltaY==0&&deltaX<0){
@@ -248,20 +380,9 @@ public class RankPosition {
             referenceAngle = (float) Math.atan(deltaY/deltaX);
             if (deltaX<0){
                 referenceAngle=(float) Math.PI+referenceAngle;
-                System.out.println("mo");
             }
         }
-
-        float newX = (float) (halfLength*Math.cos(theta + referenceAngle));
-        float newY = (float) (halfLength*Math.sin(theta + referenceAngle));
-
-
-        front.setPoint((midpoint.getX() + newX), (midpoint.getY()+ newY));
-        end.setPoint((midpoint.getX() - newX), (midpoint.getY()- newY));
-
-        //float midX = (front.getX()+ end.getX())/2.0f;
-        //float midY = (front.getY()+ end.getY())/2.0f;
-        //this.midpoint = new Point(midX, midY);
+        return referenceAngle;
     }
 
     /**
@@ -271,23 +392,31 @@ public class RankPosition {
      * @param both
      */
     public void expansionMove(float headExpansion, float tailExpansion) {
-        if(this.lineType==this.LINE) {
-            float midX = (front.getX()+ end.getX())/2.0f;
-            float midY = (front.getY()+ end.getY())/2.0f;
-            this.midpoint = new Point(midX, midY);
-        }
+        checkNotFrozen();
+        float referenceAngle = getExpansionReferenceAngle();
+        expansionMove(headExpansion, tailExpansion, Math.cos(referenceAngle), Math.sin(referenceAngle));
+    }
 
+    /**
+     * Expands or condenses the rank along its own direction, using the cosine and sine of
+     * the rank's angle that were already computed for this position
+     *
+     * @param headExpansion - the distance to move the front outwards
+     * @param tailExpansion - the distance to move the end outwards
+     * @param cosReference - the cosine of getExpansionReferenceAngle
+     * @param sinReference - the sine of getExpansionReferenceAngle
+     */
+    public void expansionMove(float headExpansion, float tailExpansion, double cosReference, double sinReference) {
+        checkNotFrozen();
         float frontX = front.getX();
         float frontY = front.getY();
         float endX = end.getX();
         float endY = end.getY();
 
-        float referenceAngle = (float) Math.atan(((frontY-endY)/(frontX-endX)));
-
-        float deltaXHead = (float) (headExpansion*Math.cos(referenceAngle));
-        float deltaYHead = (float) (headExpansion*Math.sin(referenceAngle));
-        float deltaXEnd = (float) (tailExpansion*Math.cos(referenceAngle));
-        float deltaYEnd = (float) (tailExpansion*Math.sin(referenceAngle));
+        float deltaXHead = (float) (headExpansion*cosReference);
+        float deltaYHead = (float) (headExpansion*sinReference);
+        float deltaXEnd = (float) (tailExpansion*cosReference);
+        float deltaYEnd = (float) (tailExpansion*sinReference);
 
         //different signs for different orientations
         if(!(frontX-endX<0)&&!(frontY-endY<0)){
@@ -306,15 +435,23 @@ public class RankPosition {
 
         float midX = (front.getX()+ end.getX())/2.0f;
         float midY = (front.getY()+ end.getY())/2.0f;
-        this.midpoint = new Point(midX, midY);
+        this.midpoint.setPoint(midX, midY);
 
     }
 
+    /**
+     * Returns the angle of the rank as measured for expansions
+     */
+    public float getExpansionReferenceAngle() {
+        return (float) Math.atan(((front.getY()-end.getY())/(front.getX()-end.getX())));
+    }
+
     public void curveMoveAuto(float dist, int type) {
+        checkNotFrozen();
         if(this.lineType==this.LINE) {
             float midX = (front.getX()+ end.getX())/2.0f;
             float midY = (front.getY()+ end.getY())/2.0f;
-            this.midpoint = new Point(midX, midY);
+            this.midpoint.setPoint(midX, midY);
         }
 
         // type = 0 for left, 1 for right
@@ -322,13 +459,13 @@ public class RankPosition {
         float vY = front.getY() - end.getY();
         float len = (float)Math.sqrt(vX*vX + vY*vY);
         if(lineType==LINE) {
-            midpoint = new Point(end.getX()+vX/2.0f,end.getY()+vY/2.0f);
+            midpoint.setPoint(end.getX()+vX/2.0f,end.getY()+vY/2.0f);
         }
         if(type==0) {
-            midpoint = new Point(midpoint.getX()+vY*dist/len, midpoint.getY()-vX*dist/len);
+            midpoint.setPoint(midpoint.getX()+vY*dist/len, midpoint.getY()-vX*dist/len);
         }
         else {
-            midpoint = new Point(midpoint.getX()-vY*dist/len, midpoint.getY()+vX*dist/len);
+            midpoint.setPoint(midpoint.getX()-vY*dist/len, midpoint.getY()+vX*dist/len);
         }
         float vmX = front.getX() - midpoint.getX();
         float vmY = front.getY() - midpoint.getY();
@@ -342,6 +479,7 @@ public class RankPosition {
     }
 
     public void flattenMidMove(float t) {
+        checkNotFrozen();
         if(lineType==LINE || t==1) {
             lineType = LINE;
             return;
@@ -354,6 +492,7 @@ public class RankPosition {
     }
 
     public void flattenEndsMove(float t) {
+        checkNotFrozen();
         // TODO: make this prettier? maybe project midpoint to vector instead of interpolating midpoints?
         if(lineType==LINE) {
             lineType = LINE;
@@ -371,10 +510,11 @@ public class RankPosition {
     }
 
     public void directMove(RankPosition endpoint, float t) {
+        checkNotFrozen();
         float vX = front.getX() - end.getX();
         float vY = front.getY() - end.getY();
         if(lineType==LINE) {
-            midpoint = new Point(end.getX()+vX/2.0f,end.getY()+vY/2.0f);
+            midpoint.setPoint(end.getX()+vX/2.0f,end.getY()+vY/2.0f);
         }
 
         if(this.lineType == CURVE || endpoint.lineType == CURVE) {
@@ -382,16 +522,21 @@ public class RankPosition {
         }
 
         // if either is a line, set where the midpoint is
+        // the destination belongs to the command, so its midpoint is read but never written
+        float endMidX = endpoint.midpoint.getX();
+        float endMidY = endpoint.midpoint.getY();
         if(endpoint.lineType == LINE) {
-            endpoint.midpoint = endpoint.front.interpolate(endpoint.end, 0.5f);
+            endMidX = endpoint.front.getX()*(1-0.5f) + endpoint.end.getX()*0.5f;
+            endMidY = endpoint.front.getY()*(1-0.5f) + endpoint.end.getY()*0.5f;
         }
         if(this.lineType == LINE) {
-            this.midpoint = this.front.interpolate(this.end, 0.5f);
+            this.midpoint.setPoint(front.getX(), front.getY());
+            this.midpoint.interpolateTo(end.getX(), end.getY(), 0.5f);
         }
 
-        this.front = this.front.interpolate(endpoint.front, t);
-        this.end = this.end.interpolate(endpoint.end, t);
-        this.midpoint = this.midpoint.interpolate(endpoint.midpoint, t);
+        this.front.interpolateTo(endpoint.front.getX(), endpoint.front.getY(), t);
+        this.end.interpolateTo(endpoint.end.getX(), endpoint.end.getY(), t);
+        this.midpoint.interpolateTo(endMidX, endMidY, t);
 
         if(t==1) {
             this.lineType = endpoint.lineType;
@@ -402,7 +547,8 @@ public class RankPosition {
     private float getRankPositionLength() {
         // Note: this is simplified - the "length" of a curve is front-mid + mid-end
         if(this.lineType==LINE) {
-            this.midpoint = this.front.interpolate(this.end, 0.5f);
+            this.midpoint.setPoint(front.getX(), front.getY());
+            this.midpoint.interpolateTo(end.getX(), end.getY(), 0.5f);
         }
 
         return (float)(this.front.distance(this.midpoint.getX(), this.midpoint.getY()) +
@@ -416,11 +562,12 @@ public class RankPosition {
     }
 
     public void FTAMove(RankPosition endpoint, ArrayList<Point>path, float t) {
+        checkNotFrozen();
         // TODO: UNUSED - need to be able to store "waypoints" for this and FTA in Move
         float len = getPathLength(path) + this.getRankPositionLength() + endpoint.getRankPositionLength();
-        this.front = this.front.interpolate(endpoint.front, t);
-        this.end = this.end.interpolate(endpoint.end, t);
-        this.midpoint = this.midpoint.interpolate(endpoint.midpoint, t);
+        this.front.interpolateTo(endpoint.front.getX(), endpoint.front.getY(), t);
+        this.end.interpolateTo(endpoint.end.getX(), endpoint.end.getY(), t);
+        this.midpoint.interpolateTo(endpoint.midpoint.getX(), endpoint.midpoint.getY(), t);
 
         if(t==1){
             this.lineType = endpoint.lineType;
@@ -429,6 +576,7 @@ public class RankPosition {
     }
 
     public void cornerMove(float t, int xDir, int yDir, int leadDir) {
+        checkNotFrozen();
         float length = (float)Math.sqrt(Math.pow(front.getX() - end.getX(),2)
                 + Math.pow(front.getY() - end.getY(),2));
 
@@ -437,14 +585,14 @@ public class RankPosition {
             // front will be moving in the y-direction, end in x
             if(xDir*front.getX() > xDir*end.getX()) {
                 // set the pivot point
-                midpoint = new Point(front.getX(),front.getY());
+                midpoint.setPoint(front.getX(),front.getY());
                 front.setPoint(front.getX(), front.getY()+t*length*yDir);
                 end.setPoint(end.getX()+t*length*xDir, end.getY());
             }
             // end will be moving in the y-direction, front in x
             else {
                 // set the pivot point
-                midpoint = new Point(end.getX(),end.getY());
+                midpoint.setPoint(end.getX(),end.getY());
                 end.setPoint(end.getX(), end.getY()+t*length*yDir);
                 front.setPoint(front.getX()+t*length*xDir, front.getY());
             }
@@ -453,14 +601,14 @@ public class RankPosition {
             // front moving in x, end in y
             if(yDir*front.getY() > yDir*end.getY()) {
                 // set the pivot point
-                midpoint = new Point(front.getX(),front.getY());
+                midpoint.setPoint(front.getX(),front.getY());
                 front.setPoint(front.getX()+t*length*xDir, front.getY());
                 end.setPoint(end.getX(), end.getY()+t*length*yDir);
             }
             // front moving in y, end in x
             else {
                 // set the pivot point
-                midpoint = new Point(end.getX(),end.getY());
+                midpoint.setPoint(end.getX(),end.getY());
                 front.setPoint(front.getX(), front.getY()+t*length*yDir);
                 end.setPoint(end.getX()+t*length*xDir, end.getY());
             }
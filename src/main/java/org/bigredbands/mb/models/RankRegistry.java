@@ -0,0 +1,111 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Gives every rank name of a drill a small integer ID, so the moves of the drill can keep their
+ * rank data in arrays indexed by ID instead of hashing the name every time a rank is looked up.
+ * IDs are handed out in order starting from 0 and are never reused, so they stay valid in every
+ * move that shares the registry.  Renaming a rank only changes its name here; its ID, and so
+ * everything stored for it in the moves, stays the same.
+ *
+ * Like the rest of the drill, a registry is only changed while holding the drill's lock.
+ */
+public class RankRegistry {
+
+    // The ID of each rank name
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>();
+
+    // The name of each ID, or null for an ID whose name was given to another rank
+    private ArrayList<String> names = new ArrayList<String>();
+
+    // Incremented whenever a rank is renamed, so anything ordered by name knows to sort again
+    private volatile int renameCount = 0;
+
+    /**
+     * Returns the ID of a rank name
+     *
+     * @param rankName - the rank name to look up
+     * @return - the ID of the rank, or -1 if the name has never been registered
+     */
+    public int getId(String rankName) {
+        Integer id = ids.get(rankName);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the ID of a rank name, giving the name the next free ID if it does not have one yet
+     *
+     * @param rankName - the rank name to register
+     * @return - the ID of the rank
+     */
+    public int register(String rankName) {
+        Integer id = ids.get(rankName);
+        if (id == null) {
+            id = names.size();
+            ids.put(rankName, id);
+            names.add(rankName);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the name of a rank ID
+     *
+     * @param id - the ID of the rank
+     * @return - the name of the rank, or null if the ID has since been replaced by a rename
+     */
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the number of IDs handed out, which is one more than the largest ID
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Gives the ID of a rank a new name.  If the new name had an ID of its own, such as from a
+     * rank that was deleted, that ID is retired so the name only refers to the renamed rank.
+     *
+     * @param oldName - the current name of the rank
+     * @param newName - the new name of the rank
+     * @return - true if the rank was renamed, false if the old name is not registered
+     */
+    public boolean rename(String oldName, String newName) {
+        Integer id = ids.remove(oldName);
+        if (id == null) {
+            return false;
+        }
+
+        Integer replacedId = ids.put(newName, id);
+        if (replacedId != null) {
+            names.set(replacedId, null);
+        }
+        names.set(id, newName);
+        renameCount++;
+        return true;
+    }
+
+    /**
+     * Returns a registry with the same IDs and names, which later registrations and renames of
+     * this registry do not affect
+     */
+    RankRegistry copy() {
+        RankRegistry copy = new RankRegistry();
+        copy.ids.putAll(ids);
+        copy.names.addAll(names);
+        copy.renameCount = renameCount;
+        return copy;
+    }
+
+    /**
+     * Returns the number of renames made, which changes whenever the order of the names may have
+     */
+    int getRenameCount() {
+        return renameCount;
+    }
+}
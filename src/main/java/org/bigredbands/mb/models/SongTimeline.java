@@ -0,0 +1,220 @@
+package org.bigredbands.mb.models;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of where every count of the drill falls in the song.  Counts are numbered through the
+ * whole drill, starting from 1 for the first count of the first move that has counts, and count 0
+ * is the start of the drill.  The index holds where each move starts, where the counts per
+ * measure change, where the tempo changes and the time each count is reached, so each count can
+ * be looked up by binary search instead of walking the song constants.
+ *
+ * A timeline never changes once built.  The drill builds a new one when its song constants or
+ * the counts of its moves change.
+ */
+public class SongTimeline {
+
+    // The counts per measure and tempo used until the song constants say otherwise
+    public static final int DEFAULT_COUNTS_PER_MEASURE = 4;
+    public static final int DEFAULT_TEMPO = 120;
+
+    // The length of a count when the tempo is not usable, in milliseconds
+    public static final int DEFAULT_COUNT_LENGTH = 60000 / DEFAULT_TEMPO;
+
+    // The count each move starts after, so move i holds counts moveStarts[i] + 1 to moveStarts[i + 1]
+    private final int[] moveStarts;
+
+    // The measures where the counts per measure change, the count each of them starts after and
+    // the counts per measure from then on, in order
+    private final int[] meterMeasures;
+    private final int[] meterStarts;
+    private final int[] meterCounts;
+
+    // The measures where the tempo changes and the tempo from then on, in order
+    private final int[] tempoMeasures;
+    private final int[] tempos;
+
+    // The time each count is reached from the start of the drill, in milliseconds
+    private final long[] countTimes;
+
+    /**
+     * Builds the timeline of a drill
+     *
+     * @param moves - the moves of the drill
+     * @param tempoHashMap - a map of measure number to tempo change
+     * @param countsHashMap - a map of measure number to counts per measure
+     */
+    public SongTimeline(List<Move> moves, Map<Integer, Integer> tempoHashMap, Map<Integer, Integer> countsHashMap) {
+        moveStarts = new int[moves.size() + 1];
+        for (int i = 0; i < moves.size(); i++) {
+            moveStarts[i + 1] = moveStarts[i] + Math.max(moves.get(i).getCounts(), 0);
+        }
+
+        //the drill is in 4/4 time until the first change
+        int[] measures = sortedMeasures(countsHashMap);
+        meterMeasures = new int[measures.length + 1];
+        meterStarts = new int[measures.length + 1];
+        meterCounts = new int[measures.length + 1];
+        meterMeasures[0] = 1;
+        meterCounts[0] = DEFAULT_COUNTS_PER_MEASURE;
+        for (int i = 0; i < measures.length; i++) {
+            meterMeasures[i + 1] = measures[i];
+            meterStarts[i + 1] = meterStarts[i] + (measures[i] - meterMeasures[i]) * meterCounts[i];
+            meterCounts[i + 1] = Math.max(countsHashMap.get(measures[i]), 1);
+        }
+
+        tempoMeasures = sortedMeasures(tempoHashMap);
+        tempos = new int[tempoMeasures.length];
+        for (int i = 0; i < tempoMeasures.length; i++) {
+            tempos[i] = tempoHashMap.get(tempoMeasures[i]);
+        }
+
+        //each count lasts as long as the tempo of the count before it says
+        countTimes = new long[getTotalCounts() + 1];
+        for (int count = 1; count < countTimes.length; count++) {
+            countTimes[count] = countTimes[count - 1] + getCountLength(count - 1);
+        }
+    }
+
+    /**
+     * Returns the measure numbers of a map of song constants in order, leaving out any before the
+     * first measure
+     */
+    private static int[] sortedMeasures(Map<Integer, Integer> songConstants) {
+        int[] measures = new int[songConstants.size()];
+        int size = 0;
+        for (Integer measure : songConstants.keySet()) {
+            if (measure >= 1) {
+                measures[size++] = measure;
+            }
+        }
+        measures = Arrays.copyOf(measures, size);
+        Arrays.sort(measures);
+        return measures;
+    }
+
+    /**
+     * Finds the last entry of a sorted array that is at most the given value
+     *
+     * @return - the index of the entry, or -1 if every entry is greater
+     */
+    private static int floorIndex(int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return -index - 2;
+        }
+        //several entries may be equal, such as moves without counts, so take the last of them
+        while (index + 1 < values.length && values[index + 1] == value) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of counts in the drill
+     */
+    public int getTotalCounts() {
+        return moveStarts[moveStarts.length - 1];
+    }
+
+    /**
+     * Returns the number of counts in the moves before a move, so its first count is one more
+     *
+     * @param move - the move number
+     */
+    public int getMoveStart(int move) {
+        return moveStarts[move];
+    }
+
+    /**
+     * Returns the move a count of the drill is in
+     *
+     * @param count - the count number in the whole drill
+     * @return - the move number, or 0 for the start of the drill
+     */
+    public int getMove(int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        count = Math.min(count, getTotalCounts());
+        //the last move that starts before the count, which skips over moves without counts
+        return floorIndex(moveStarts, count - 1);
+    }
+
+    /**
+     * Returns the count within its move of a count of the drill
+     *
+     * @param count - the count number in the whole drill
+     * @return - the count number within the move, starting from 1
+     */
+    public int getCountInMove(int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        count = Math.min(count, getTotalCounts());
+        return count - moveStarts[getMove(count)];
+    }
+
+    /**
+     * Returns the measure a count of the drill is in.  The start of the drill is in the first
+     * measure.
+     *
+     * @param count - the count number in the whole drill
+     */
+    public int getMeasure(int count) {
+        int countIndex = Math.max(count - 1, 0);
+        int meter = floorIndex(meterStarts, countIndex);
+        return meterMeasures[meter] + (countIndex - meterStarts[meter]) / meterCounts[meter];
+    }
+
+    /**
+     * Returns the tempo at a count of the drill
+     *
+     * @param count - the count number in the whole drill
+     * @return - the tempo in beats per minute
+     */
+    public int getTempo(int count) {
+        int tempo = floorIndex(tempoMeasures, getMeasure(count));
+        return tempo < 0 ? DEFAULT_TEMPO : tempos[tempo];
+    }
+
+    /**
+     * Returns how long playback stays on a count before going on to the next one
+     *
+     * @param count - the count number in the whole drill
+     * @return - the length of the count in milliseconds
+     */
+    public int getCountLength(int count) {
+        int tempo = getTempo(count);
+        if (tempo <= 0) {
+            return DEFAULT_COUNT_LENGTH;
+        }
+        return 60000 / tempo;
+    }
+
+    /**
+     * Returns the time a count of the drill is reached, from the start of the drill
+     *
+     * @param count - the count number in the whole drill
+     * @return - the time in milliseconds
+     */
+    public long getTime(int count) {
+        return countTimes[Math.max(0, Math.min(count, getTotalCounts()))];
+    }
+
+    /**
+     * Returns the last count of the drill reached by a time
+     *
+     * @param time - the time from the start of the drill, in milliseconds
+     * @return - the count number in the whole drill
+     */
+    public int getCount(long time) {
+        if (time <= 0) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(countTimes, time);
+        return index < 0 ? -index - 2 : index;
+    }
+}
@@ -190,7 +190,7 @@ public class FootballField extends JPanel {
             //TODO: this needs to be refactored and pulled out to join all the other draw code eventually
             drawFieldLines(g, dim, MARGIN, expandableMarginWidth, expandableMarginHeight);
             drawHashes(g, topLeftX, topLeftY, scaleFactor);
-            if (mainView.isPlaybackRunning()) {
+            if (mainView.isPlaybackRunning() || mainView.isSeeking()) {
                 lineMap = createShapes(mainView.getPlaybackPositions(), topLeftX, topLeftY, scaleFactor); //TODO: replace this with playback positions
             }
             else {
@@ -745,14 +745,17 @@ public class FootballField extends JPanel {
 
                             if (lineMap.get(rankName).intersects(boxX, boxY, width, height)) {
                                 System.out.println("right clicked on " + rankName + "!");
+                                // The positions of the move are shared, so the change is made to a copy
                                 if(lineMap.get(rankName) instanceof Line2D){
-                                    RankPosition rightClickedRank=mainView.getRankPositions().get(rankName);
+                                    RankPosition rightClickedRank=new RankPosition(mainView.getRankPositions().get(rankName));
                                     rightClickedRank.setLineType(RankPosition.CURVE);
                                     rightClickedRank.getMidpoint().setPoint((rightClickedRank.getEnd().getX()+rightClickedRank.getFront().getX())/2, (rightClickedRank.getEnd().getY()+rightClickedRank.getFront().getY())/2);
+                                    mainView.updateInitialPosition(rankName, rightClickedRank);
                                 } else if(lineMap.get(rankName) instanceof QuadCurve2D) {
-                                    RankPosition rightClickedRank=mainView.getRankPositions().get(rankName);
+                                    RankPosition rightClickedRank=new RankPosition(mainView.getRankPositions().get(rankName));
                                     rightClickedRank.setLineType(RankPosition.LINE);
                                     rightClickedRank.getMidpoint().setPoint((rightClickedRank.getEnd().getX()+rightClickedRank.getFront().getX())/2, (rightClickedRank.getEnd().getY()+rightClickedRank.getFront().getY())/2);
+                                    mainView.updateInitialPosition(rankName, rightClickedRank);
                                 }
 
                                 projectView.repaintFieldPanel();
@@ -975,12 +978,17 @@ public class FootballField extends JPanel {
                     int newX = arg0.getX();
                     int newY = arg0.getY();
 
+                    // The positions of the move are shared, so each rank is dragged as a copy
+                    HashMap<String, RankPosition> draggedRanks = new HashMap<String, RankPosition>();
                     for (String rank : ranks) {
+                        RankPosition draggedRank = new RankPosition(mainView.getRankPositions().get(rank));
+                        draggedRanks.put(rank, draggedRank);
+
                         // Default to "Line Selected" if multiple ranks selected & dragged
                         if(lineMap.get(rank) instanceof Line2D){
                             if (mainView.getSelectPoint() == LINE_SELECTED || ranks.size() > 1){
-                                Point end = mainView.getRankPositions().get(rank).getEnd();
-                                Point head = mainView.getRankPositions().get(rank).getFront();
+                                Point end = draggedRank.getEnd();
+                                Point head = draggedRank.getFront();
 
                                 // TODO: HACK - snap to most recent head
                                 float preSnapX = head.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
@@ -1006,7 +1014,7 @@ public class FootballField extends JPanel {
                                 newY = (int)((dragYardsY + (headSnapY - preSnapY))*scaleFactor + topLeftY);
 
                             } else if (mainView.getSelectPoint() == HEAD_SELECTED) {
-                                Point head = mainView.getRankPositions().get(rank).getFront();
+                                Point head = draggedRank.getFront();
                                 float snapX = head.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
                                 float snapY = head.getY() + (arg0.getY()-yDragOrigin)/scaleFactor;
                                 if (mainView.isExactGrid()) {
@@ -1023,7 +1031,7 @@ public class FootballField extends JPanel {
                                 repaint();
                                 projectView.repaintScrollBar();
                             } else {
-                                Point end=mainView.getRankPositions().get(rank).getEnd();
+                                Point end=draggedRank.getEnd();
                                 float snapX = end.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
                                 float snapY = end.getY() + (arg0.getY()-yDragOrigin)/scaleFactor;
                                 if (mainView.isExactGrid()) {
@@ -1041,9 +1049,9 @@ public class FootballField extends JPanel {
                             }
                         } else if(lineMap.get(rank) instanceof QuadCurve2D){
                             if(mainView.getSelectPoint()==LINE_SELECTED || ranks.size() > 1){
-                                Point end = mainView.getRankPositions().get(rank).getEnd();
-                                Point head = mainView.getRankPositions().get(rank).getFront();
-                                Point mid = mainView.getRankPositions().get(rank).getMidpoint();
+                                Point end = draggedRank.getEnd();
+                                Point head = draggedRank.getFront();
+                                Point mid = draggedRank.getMidpoint();
 
                                 // TODO: HACK - snap to most recent head
                                 float preSnapX = head.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
@@ -1073,7 +1081,7 @@ public class FootballField extends JPanel {
                                 repaint();
                                 projectView.repaintScrollBar();
                             } else if(mainView.getSelectPoint()==HEAD_SELECTED){
-                                Point head=mainView.getRankPositions().get(rank).getFront();
+                                Point head=draggedRank.getFront();
                                 float snapX = head.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
                                 float snapY = head.getY() + (arg0.getY()-yDragOrigin)/scaleFactor;
                                 if (mainView.isExactGrid()) {
@@ -1089,7 +1097,7 @@ public class FootballField extends JPanel {
                                 repaint();
                                 projectView.repaintScrollBar();
                             } else if(mainView.getSelectPoint()==END_SELECTED){
-                                Point end=mainView.getRankPositions().get(rank).getEnd();
+                                Point end=draggedRank.getEnd();
                                 float snapX = end.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
                                 float snapY = end.getY() + (arg0.getY()-yDragOrigin)/scaleFactor;
                                 System.out.println((arg0.getX()-xDragOrigin)*scaleFactor);
@@ -1106,7 +1114,7 @@ public class FootballField extends JPanel {
                                 repaint();
                                 projectView.repaintScrollBar();
                             } else {
-                                Point mid=mainView.getRankPositions().get(rank).getMidpoint();
+                                Point mid=draggedRank.getMidpoint();
                                 float snapX = mid.getX() + (arg0.getX()-xDragOrigin)/scaleFactor;
                                 float snapY = mid.getY() + (arg0.getY()-yDragOrigin)/scaleFactor;
                                 System.out.println((arg0.getX()-xDragOrigin)*scaleFactor);
@@ -1130,8 +1138,8 @@ public class FootballField extends JPanel {
                     yDragOrigin = newY;
 
                     if(mainView.getCurrentMove()==0) {
-                        for(String rankName : mainView.getSelectedRanks()) {
-                            mainView.updateInitialPosition(rankName, mainView.getRankPositions().get(rankName));
+                        for(String rankName : draggedRanks.keySet()) {
+                            mainView.updateInitialPosition(rankName, draggedRanks.get(rankName));
                         }
                     }
 
@@ -231,9 +231,7 @@ public class MainView implements ViewInterface {
             newCommand.setDestination(dest);
         }
 
-        for(String rankName : rankNames) {
-            controller.assignCommand(rankName,  newCommand);
-        }
+        controller.assignCommand(new HashSet<String>(rankNames), newCommand);
         project.cancelPreviousCommand(type);
         return;
     }
@@ -513,6 +511,42 @@ public class MainView implements ViewInterface {
         return controller.getPlaybackPositions();
     }
 
+    /**
+     * Jumps to a count of the whole show
+     *
+     * @param count - the count number, counting from the start of the first move
+     */
+    public void seek(int count) {
+        controller.seek(count);
+    }
+
+    /**
+     * Checks if the field is showing the ranks partway through a move, after seeking
+     *
+     * @return - true if the field shows the count sought to, false if not
+     */
+    public boolean isSeeking() {
+        return controller.isSeeking();
+    }
+
+    /**
+     * Gets the count of the whole show that the field is showing
+     *
+     * @return - the count number, counting from the start of the first move
+     */
+    public int getSeekCount() {
+        return controller.getSeekCount();
+    }
+
+    /**
+     * Gets the number of counts in the whole show
+     *
+     * @return - the number of counts in the show
+     */
+    public int getTotalCounts() {
+        return controller.getTotalCounts();
+    }
+
     /**
      * Disables the listeners of the buttons in project view for playback
      */
@@ -549,6 +583,20 @@ public class MainView implements ViewInterface {
         controller.setMoveComment(comment);
     }
 
+    /**
+     * Undoes the most recent edit to the project
+     */
+    public void undo() {
+        controller.undo();
+    }
+
+    /**
+     * Redoes the most recently undone edit
+     */
+    public void redo() {
+        controller.redo();
+    }
+
     /**
      * Returns the number of the current move
      *
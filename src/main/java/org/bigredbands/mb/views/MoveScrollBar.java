@@ -193,8 +193,7 @@ public class MoveScrollBar {
     private void deleteMove(final int moveNumber) {
         // remove an existing move
         // TODO: fill in the function (make sure to include sanity checks!)
-        // TODO: also, ask for confirmation of deletion (because implementing "undo" would suck)
-        // TODO: ^ tru fax
+        // NOTE: deleting a move can be undone from the edit menu
 
         // Note: this is hacky as shit, but it works. I guess.
         int numMoves = thumbnailList.size()-1;
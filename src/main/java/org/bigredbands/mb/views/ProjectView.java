@@ -38,10 +38,13 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 import javax.swing.border.Border;
 import javax.swing.border.LineBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import org.bigredbands.mb.controllers.ControllerInterface;
 import org.bigredbands.mb.controllers.MainController;
@@ -101,6 +104,12 @@ public class ProjectView {
     private ArrayList<JButton> buttonList = new ArrayList<JButton>();
     private final JButton playbackButton;
 
+    // Scrubs through the counts of the whole show
+    private final JSlider seekSlider = new JSlider(0, 0, 0);
+
+    // True while the slider is being moved to follow the field rather than by the user
+    private boolean updatingSeekSlider = false;
+
     //TODO: this is really, really sketchy
     //doing this so i can pass in an instance of the projectView to the draw ranks function
     // when it is called from an action listener
@@ -308,6 +317,8 @@ public class ProjectView {
         JMenuItem exitMenuItem = new JMenuItem("Exit");
 
         // Creates the buttons for the edit menu
+        JMenuItem undoMenuItem = new JMenuItem("Undo");
+        JMenuItem redoMenuItem = new JMenuItem("Redo");
         JMenuItem addRankMenuItem = new JMenuItem("Add Rank");
         JMenuItem songConstantsMenuItem = new JMenuItem("Edit Song Constants");
         JMenuItem editMoveComments = new JMenuItem("Edit Move Comments");
@@ -323,6 +334,8 @@ public class ProjectView {
         exitMenuItem.setToolTipText("Exit the program");
 
         // Sets the tooltips for the edit menu
+        undoMenuItem.setToolTipText("Undo the last change (Ctrl+Z)");
+        redoMenuItem.setToolTipText("Redo the last undone change (Ctrl+Y)");
         addRankMenuItem.setToolTipText("Add a new rank to this project");
         songConstantsMenuItem.setToolTipText("Modify measures' tempos and counts");
         editMoveComments.setToolTipText("Edit the comments section in the PDF for this move.");
@@ -335,6 +348,8 @@ public class ProjectView {
         saveAsMenuItem.addActionListener(new SaveAs());
         exportPDFMenuItem.addActionListener(new ExportPDF());
         exitMenuItem.addActionListener(new Exit());
+        undoMenuItem.addActionListener(new Undo());
+        redoMenuItem.addActionListener(new Redo());
         addRankMenuItem.addActionListener(new AddRank());
         songConstantsMenuItem.addActionListener(new SongConstants());
         editMoveComments.addActionListener(new EditMoveComments());
@@ -347,6 +362,8 @@ public class ProjectView {
         fileMenu.add(saveAsMenuItem);
         fileMenu.add(exportPDFMenuItem);
         fileMenu.add(exitMenuItem);
+        editMenu.add(undoMenuItem);
+        editMenu.add(redoMenuItem);
         editMenu.add(addRankMenuItem);
         editMenu.add(songConstantsMenuItem);
         editMenu.add(editMoveComments);
@@ -904,6 +921,17 @@ public class ProjectView {
             }
         });
 
+        //dragging the slider scrubs through the show, during playback or not
+        seekSlider.addKeyListener(new HotKey());
+        seekSlider.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (!updatingSeekSlider) {
+                    mainView.seek(seekSlider.getValue());
+                }
+            }
+        });
+
         // sets up the bar above the command buttons
         //Add rank button
         JButton addRankButton = createButton("Add Rank");
@@ -956,6 +984,7 @@ public class ProjectView {
         JPanel toolbarPanel = new JPanel(new BorderLayout());
         JPanel toolbarButtonsPanel = new JPanel();
         toolbarButtonsPanel.add(playbackButton);
+        toolbarButtonsPanel.add(seekSlider);
         toolbarButtonsPanel.add(addRankButton);
         toolbarButtonsPanel.add(deleteRankButton);
         toolbarPanel.add(toolbarButtonsPanel, BorderLayout.WEST);
@@ -1260,6 +1289,20 @@ public class ProjectView {
      */
     public void displayMoveNumber(int moveNumber, int countNumber) {
         moveLabel.setText("Move Number:  " + moveNumber + ", Count Number:  " + countNumber);
+        updateSeekSlider();
+    }
+
+    /**
+     * Moves the seek slider to the count shown on the field, without seeking again.  The slider
+     * is left alone while the user is dragging it.
+     */
+    private void updateSeekSlider() {
+        updatingSeekSlider = true;
+        seekSlider.setMaximum(mainView.getTotalCounts());
+        if (!seekSlider.getValueIsAdjusting()) {
+            seekSlider.setValue(mainView.getSeekCount());
+        }
+        updatingSeekSlider = false;
     }
 
     /**
@@ -1505,6 +1548,26 @@ public class ProjectView {
         }
     }
 
+    /**
+     * This method communicates with the controller which will undo the last edit
+     */
+    class Undo implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            mainView.undo();
+        }
+    }
+
+    /**
+     * This method communicates with the controller which will redo the last undone edit
+     */
+    class Redo implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            mainView.redo();
+        }
+    }
+
     /**
      * This method communicates with the football field to add a rank to the field
      */
@@ -1591,6 +1654,10 @@ public class ProjectView {
             }
             if (ctrlPress && e.getKeyCode()==KeyEvent.VK_S) {
                 onSave(false);
+            } else if (ctrlPress && e.getKeyCode() == KeyEvent.VK_Z) {
+                mainView.undo();
+            } else if (ctrlPress && e.getKeyCode() == KeyEvent.VK_Y) {
+                mainView.redo();
             } else if (ctrlPress && e.getKeyCode() == KeyEvent.VK_A) {
                 // select all ranks
                 HashMap<String,RankPosition> rankPositions = mainView.getRankPositions();
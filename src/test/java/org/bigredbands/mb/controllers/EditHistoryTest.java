@@ -0,0 +1,94 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EditHistoryTest {
+
+    @Test
+    public void testUndoAndRedoInOrder() {
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        EditHistory history = new EditHistory(3);
+        for (int i = 0; i < 5; i++) {
+            history.record(new AppendEdit(values, i));
+            values.add(i);
+        }
+
+        //only the three most recent edits are kept
+        Assert.assertEquals(4, history.undo());
+        Assert.assertEquals(3, history.undo());
+        Assert.assertEquals(2, history.undo());
+        Assert.assertEquals(-1, history.undo());
+        Assert.assertEquals(2, values.size());
+
+        Assert.assertEquals(2, history.redo());
+        Assert.assertEquals(3, values.size());
+
+        //a new edit drops whatever was left to redo
+        history.record(new AppendEdit(values, 7));
+        values.add(7);
+        Assert.assertFalse(history.canRedo());
+        Assert.assertEquals(7, history.undo());
+        Assert.assertEquals(2, history.undo());
+        Assert.assertEquals(2, values.size());
+    }
+
+    @Test
+    public void testMergedEditsUndoTogether() {
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        EditHistory history = new EditHistory();
+        for (int i = 0; i < 4; i++) {
+            AppendEdit edit = new AppendEdit(values, i);
+            edit.mergeable = true;
+            history.record(edit);
+            values.add(i);
+        }
+
+        Assert.assertEquals(0, history.undo());
+        Assert.assertTrue(values.isEmpty());
+        Assert.assertFalse(history.canUndo());
+    }
+
+    /**
+     * Appends values to a list, one or more at a time
+     */
+    private static class AppendEdit extends EditHistory.Edit {
+
+        private final ArrayList<Integer> values;
+        private final int value;
+        private int count = 1;
+        private boolean mergeable = false;
+
+        AppendEdit(ArrayList<Integer> values, int value) {
+            this.values = values;
+            this.value = value;
+        }
+
+        @Override
+        int undo() {
+            for (int i = 0; i < count; i++) {
+                values.remove(values.size() - 1);
+            }
+            return value;
+        }
+
+        @Override
+        int redo() {
+            for (int i = 0; i < count; i++) {
+                values.add(value + i);
+            }
+            return value;
+        }
+
+        @Override
+        boolean merge(EditHistory.Edit next) {
+            if (!mergeable) {
+                return false;
+            }
+            count++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MainControllerEditTest {
+
+    private StubView view;
+    private MainController controller;
+
+    @Before
+    public void createProject() {
+        view = new StubView();
+        controller = new MainController(view);
+        view.setController(controller);
+        controller.createEmptyProject();
+    }
+
+    @Test
+    public void testCommandEdits() {
+        controller.addRank("A", rankAt(10, 10));
+        controller.addMove(8);
+        controller.addMove(8);
+        controller.changeMoves(1);
+        controller.addSelectedRank("A", true);
+
+        DrillInfo before = controller.snapshotDrill();
+        controller.assignCommand(controller.getSelectedRanks(), new CommandPair(CommandPair.FM, 8));
+        DrillInfo assigned = controller.snapshotDrill();
+        Assert.assertFalse(before.equals(assigned));
+        assertUndoRedo(before, assigned);
+
+        Assert.assertEquals("", controller.splitCommand(0, 3));
+        DrillInfo split = controller.snapshotDrill();
+        Assert.assertEquals(2, split.getMoves().get(1).getCommands().get("A").size());
+        assertUndoRedo(assigned, split);
+
+        controller.mergeCommands(new int[] {0, 1});
+        DrillInfo merged = controller.snapshotDrill();
+        Assert.assertEquals(1, merged.getMoves().get(1).getCommands().get("A").size());
+        assertUndoRedo(split, merged);
+
+        controller.removeCommands(new int[] {0});
+        DrillInfo removed = controller.snapshotDrill();
+        Assert.assertTrue(removed.getMoves().get(1).getCommands().get("A").isEmpty());
+        assertUndoRedo(merged, removed);
+
+        //the later move started where the command left the rank, and is back where it began
+        Assert.assertEquals(before.getMoves().get(2).getStartPositions().get("A"),
+                removed.getMoves().get(2).getStartPositions().get("A"));
+        Assert.assertFalse(assigned.getMoves().get(2).getStartPositions().get("A").equals(
+                removed.getMoves().get(2).getStartPositions().get("A")));
+    }
+
+    @Test
+    public void testRankAndMoveEdits() {
+        controller.addRank("A", rankAt(10, 10));
+        controller.addMove(8);
+        controller.addSelectedRank("A", true);
+        controller.assignCommand(controller.getSelectedRanks(), new CommandPair(CommandPair.FM, 8));
+
+        DrillInfo before = controller.snapshotDrill();
+        controller.addRank("B", rankAt(20, 20));
+        DrillInfo added = controller.snapshotDrill();
+        Assert.assertTrue(added.doesRankExist("B"));
+        assertUndoRedo(before, added);
+
+        HashSet<String> deletedRanks = new HashSet<String>(Collections.singleton("A"));
+        controller.deleteRank(deletedRanks);
+        DrillInfo deleted = controller.snapshotDrill();
+        Assert.assertFalse(deleted.doesRankExist("A"));
+        assertUndoRedo(added, deleted);
+
+        controller.undo();
+        controller.changeMoves(0);
+        controller.addMove(4);
+        DrillInfo moveAdded = controller.snapshotDrill();
+        Assert.assertEquals(3, moveAdded.getMoves().size());
+        assertUndoRedo(added, moveAdded);
+
+        controller.deleteMove(1);
+        DrillInfo moveDeleted = controller.snapshotDrill();
+        Assert.assertEquals(2, moveDeleted.getMoves().size());
+        Assert.assertEquals(8, moveDeleted.getMoves().get(1).getCounts());
+        assertUndoRedo(moveAdded, moveDeleted);
+    }
+
+    @Test
+    public void testSongConstantsAndComments() {
+        controller.addMove(8);
+        HashMap<Integer, Integer> tempos = new HashMap<Integer, Integer>();
+        tempos.put(2, 90);
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        counts.put(1, 3);
+
+        DrillInfo before = controller.snapshotDrill();
+        int updates = view.getViewUpdates();
+        controller.setSongConstants(tempos, counts, "Fight Song");
+        Assert.assertTrue(view.getViewUpdates() > updates);
+        DrillInfo changed = controller.snapshotDrill();
+        Assert.assertEquals("Fight Song", changed.getSongName());
+        Assert.assertEquals(60000 / 90, changed.getTimeline().getCountLength(4));
+        assertUndoRedo(before, changed);
+
+        controller.undo();
+        Assert.assertEquals(before.getSongName(), controller.snapshotDrill().getSongName());
+        controller.redo();
+        Assert.assertEquals("Fight Song", controller.snapshotDrill().getSongName());
+
+        //typing a comment is undone all at once
+        controller.setMoveComment("H");
+        controller.setMoveComment("Halt");
+        Assert.assertEquals("Halt", controller.getMoveComment());
+        controller.undo();
+        Assert.assertEquals("", controller.getMoveComment());
+        controller.redo();
+        Assert.assertEquals("Halt", controller.getMoveComment());
+        controller.undo();
+        controller.undo();
+        Assert.assertEquals(before, controller.snapshotDrill());
+        Assert.assertEquals(before.getSongName(), controller.snapshotDrill().getSongName());
+    }
+
+    @Test
+    public void testPositionEditsMergeOnlyForSameRanks() {
+        controller.addRank("A", rankAt(10, 10));
+        controller.addRank("B", rankAt(20, 20));
+        controller.addMove(8);
+        controller.changeMoves(0);
+        DrillInfo before = controller.snapshotDrill();
+
+        //dragging both ranks together is one edit
+        controller.addSelectedRank("A", true);
+        controller.addSelectedRank("B", false);
+        for (int i = 1; i <= 3; i++) {
+            controller.updateInitialPosition("A", rankAt(10 + i, 10));
+            controller.updateInitialPosition("B", rankAt(20 + i, 20));
+        }
+        DrillInfo dragged = controller.snapshotDrill();
+
+        //dragging just one of them straight afterwards is another
+        controller.addSelectedRank("B", true);
+        controller.updateInitialPosition("B", rankAt(30, 30));
+        controller.updateInitialPosition("B", rankAt(31, 30));
+        DrillInfo draggedAgain = controller.snapshotDrill();
+        Assert.assertEquals(rankAt(31, 30), draggedAgain.getMoves().get(1).getStartPositions().get("B"));
+
+        controller.undo();
+        Assert.assertEquals(dragged, controller.snapshotDrill());
+        controller.undo();
+        Assert.assertEquals(before, controller.snapshotDrill());
+        controller.redo();
+        controller.redo();
+        Assert.assertEquals(draggedAgain, controller.snapshotDrill());
+    }
+
+    @Test
+    public void testHundredStepUndo() {
+        ArrayList<DrillInfo> states = new ArrayList<DrillInfo>();
+        states.add(controller.snapshotDrill());
+        for (int i = 0; i < EditHistory.DEFAULT_MAX_EDITS; i++) {
+            String rankName = "R" + (i / 4);
+            switch (i % 4) {
+            case 0:
+                controller.addRank(rankName, rankAt(i, 10));
+                break;
+            case 1:
+                controller.addMove(4);
+                break;
+            case 2:
+                controller.assignCommand(controller.getSelectedRanks(), new CommandPair(CommandPair.FM, 4));
+                break;
+            default:
+                controller.updateInitialPosition(rankName, rankAt(i, 40));
+                break;
+            }
+            states.add(controller.snapshotDrill());
+        }
+
+        for (int i = states.size() - 2; i >= 0; i--) {
+            controller.undo();
+            Assert.assertEquals("Undoing back to step " + i, states.get(i), controller.snapshotDrill());
+        }
+
+        //there is nothing more to undo
+        controller.undo();
+        Assert.assertEquals(states.get(0), controller.snapshotDrill());
+
+        for (int i = 1; i < states.size(); i++) {
+            controller.redo();
+            Assert.assertEquals("Redoing step " + i, states.get(i), controller.snapshotDrill());
+        }
+    }
+
+    /**
+     * Undoes the last edit, checking the drill goes back to how it was, then redoes it
+     */
+    private void assertUndoRedo(DrillInfo before, DrillInfo after) {
+        controller.undo();
+        Assert.assertEquals(before, controller.snapshotDrill());
+        controller.redo();
+        Assert.assertEquals(after, controller.snapshotDrill());
+    }
+
+    private static RankPosition rankAt(float x, float y) {
+        return new RankPosition(new Point(x, y), new Point(x + 5, y));
+    }
+}
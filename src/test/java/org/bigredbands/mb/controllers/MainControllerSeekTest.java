@@ -0,0 +1,218 @@
+package org.bigredbands.mb.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MainControllerSeekTest {
+
+    private static final int[] DIRECTIONS = {CommandPair.LS, CommandPair.FM, CommandPair.RS, CommandPair.BM};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubView view;
+    private MainController controller;
+
+    // The show as it was loaded
+    private DrillInfo show;
+
+    @Before
+    public void createController() {
+        view = new StubView();
+        controller = new MainController(view);
+        view.setController(controller);
+    }
+
+    @Test
+    public void testSeekCountMapping() throws IOException {
+        loadShow(8, 0, 4);
+        Assert.assertEquals(12, controller.getTotalCounts());
+        Assert.assertEquals(0, controller.getSeekCount());
+
+        //count 0 is the start of the first move
+        controller.seek(0);
+        assertShown(1, 0, 0);
+        controller.seek(3);
+        assertShown(1, 3, 3);
+
+        //the last count of a move is its end, which the field shows without seeking
+        controller.seek(8);
+        assertShown(1, 8, 8);
+
+        //the move without counts is skipped over
+        controller.seek(9);
+        assertShown(3, 1, 9);
+        controller.changeMoves(2);
+        Assert.assertFalse(controller.isSeeking());
+        Assert.assertEquals(8, controller.getSeekCount());
+
+        //counts past either end of the show are clamped to it
+        controller.seek(12);
+        assertShown(3, 4, 12);
+        controller.seek(100);
+        assertShown(3, 4, 12);
+        controller.seek(-5);
+        assertShown(1, 0, 0);
+    }
+
+    @Test
+    public void testScrubWithinMoveOnlyRedrawsField() throws IOException {
+        loadShow(8, 8);
+        controller.seek(1);
+        assertShown(1, 1, 1);
+
+        int viewUpdates = view.getViewUpdates();
+        int fieldUpdates = view.getFieldUpdates();
+        for (int count = 2; count < 8; count++) {
+            controller.seek(count);
+            assertShown(1, count, count);
+        }
+        Assert.assertEquals(viewUpdates, view.getViewUpdates());
+        Assert.assertEquals(fieldUpdates + 6, view.getFieldUpdates());
+
+        //seeking to the count already shown does not draw anything
+        controller.seek(7);
+        Assert.assertEquals(fieldUpdates + 6, view.getFieldUpdates());
+
+        controller.seek(8);
+        assertShown(1, 8, 8);
+        Assert.assertEquals(viewUpdates, view.getViewUpdates());
+        Assert.assertEquals(fieldUpdates + 7, view.getFieldUpdates());
+
+        //going on to the next move redraws the moves as well
+        controller.seek(9);
+        assertShown(2, 1, 9);
+        Assert.assertEquals(viewUpdates + 1, view.getViewUpdates());
+    }
+
+    @Test
+    public void testPlaybackStartsFromSoughtCount() throws IOException, InterruptedException {
+        loadShow(8, 0, 4);
+        HashMap<Integer, Integer> tempos = new HashMap<Integer, Integer>();
+        tempos.put(1, 60);
+        controller.setSongConstants(tempos, new HashMap<Integer, Integer>(), "");
+
+        controller.seek(10);
+        controller.startPlayback();
+        try {
+            Assert.assertTrue(controller.isPlaybackRunning());
+            Assert.assertFalse(controller.isSeeking());
+            Assert.assertEquals(10, controller.getSeekCount());
+
+            //the first frames are worked out from the count sought to, which lasts a second
+            long timeout = System.currentTimeMillis() + 5000;
+            while (controller.getPlaybackFrameOccupancy() == 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(1);
+            }
+            Move lastMove = show.getMoves().get(3);
+            float y = controller.getPlaybackPositions().get("A").getFront().getY();
+            float countTwoY = lastMove.getIntermediatePositions(2).get("A").getFront().getY();
+            float countThreeY = lastMove.getIntermediatePositions(3).get("A").getFront().getY();
+            Assert.assertTrue(y >= Math.min(countTwoY, countThreeY));
+            Assert.assertTrue(y <= Math.max(countTwoY, countThreeY));
+
+            //seeking during playback carries on from there
+            controller.seek(1);
+            Assert.assertTrue(controller.isPlaybackRunning());
+            Assert.assertEquals(1, controller.getSeekCount());
+        }
+        finally {
+            controller.mainThreadStopPlayback();
+        }
+    }
+
+    @Test
+    public void testScrubThroughTwoHundredMoves() throws IOException {
+        int[] moveCounts = new int[200];
+        for (int i = 0; i < moveCounts.length; i++) {
+            moveCounts[i] = i % 10 == 9 ? 0 : i / 4 % 3 + 1;
+        }
+        loadShow(moveCounts);
+
+        //the move and count within it of every count of the show
+        int totalCounts = controller.getTotalCounts();
+        int[] moves = new int[totalCounts + 1];
+        int[] countsInMove = new int[totalCounts + 1];
+        moves[0] = 1;
+        int count = 0;
+        for (int move = 1; move <= moveCounts.length; move++) {
+            for (int moveCount = 1; moveCount <= moveCounts[move - 1]; moveCount++) {
+                count++;
+                moves[count] = move;
+                countsInMove[count] = moveCount;
+            }
+        }
+        Assert.assertEquals(count, totalCounts);
+
+        int viewUpdates = view.getViewUpdates();
+        int moveChanges = 0;
+        int shownMove = controller.getCurrentMove();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i <= totalCounts; i++) {
+                count = pass == 0 ? i : totalCounts - i;
+                controller.seek(count);
+                assertShown(moves[count], countsInMove[count], count);
+                if (moves[count] != shownMove) {
+                    moveChanges++;
+                    shownMove = moves[count];
+                }
+            }
+        }
+        Assert.assertEquals(viewUpdates + moveChanges, view.getViewUpdates());
+    }
+
+    /**
+     * Checks the field shows the given count, and is only seeking if that count is partway
+     * through its move
+     *
+     * @param move - the move that should be shown
+     * @param moveCount - the count within the move
+     * @param seekCount - the count of the whole show
+     */
+    private void assertShown(int move, int moveCount, int seekCount) {
+        Move shownMove = show.getMoves().get(move);
+        boolean partway = moveCount < shownMove.getCounts();
+        String message = "Count " + seekCount + " in move " + move;
+        Assert.assertEquals(message, move, controller.getCurrentMove());
+        Assert.assertEquals(message, seekCount, controller.getSeekCount());
+        Assert.assertEquals(message, partway, controller.isSeeking());
+        Assert.assertEquals(message, shownMove.getIntermediatePositions(moveCount),
+                partway ? controller.getPlaybackPositions() : controller.getRankPositions());
+    }
+
+    /**
+     * Loads a show of one rank that marches forward, right, back and left in turn
+     *
+     * @param moveCounts - the number of counts in each move after the first
+     */
+    private void loadShow(int... moveCounts) throws IOException {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move());
+        drillInfo.addRankToMoves("A", new RankPosition(new Point(80, 40), new Point(85, 40)));
+        for (int i = 1; i <= moveCounts.length; i++) {
+            drillInfo.addMove(moveCounts[i - 1], i);
+            Move move = drillInfo.getMoves().get(i);
+            if (moveCounts[i - 1] > 0) {
+                move.addCommand("A", new CommandPair(DIRECTIONS[i % DIRECTIONS.length], moveCounts[i - 1]));
+            }
+            move.updatePositions("A", drillInfo.getMoves().get(i - 1).getEndPosition("A"));
+        }
+
+        File file = folder.newFile("show.pnd");
+        new XMLGenerator().save(drillInfo, file);
+        Assert.assertTrue(controller.loadProject(file));
+        show = controller.snapshotDrill();
+    }
+}
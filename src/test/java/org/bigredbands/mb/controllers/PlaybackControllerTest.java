@@ -0,0 +1,78 @@
+package org.bigredbands.mb.controllers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PlaybackControllerTest {
+
+    private static final int COUNTS = 1000;
+    private static final long COUNT_LENGTH = 2000000L;
+
+    /**
+     * A clock that only moves on when playback waits or a count takes time to draw
+     */
+    private static class FakeClock implements PlaybackController.Clock {
+
+        private long time = 0;
+
+        @Override
+        public synchronized long nanoTime() {
+            return time;
+        }
+
+        @Override
+        public synchronized void parkNanos(long nanos) {
+            time += nanos;
+        }
+
+        synchronized void advance(long nanos) {
+            time += nanos;
+        }
+    }
+
+    @Test
+    public void testNoDriftOverThousandCounts() {
+        final FakeClock clock = new FakeClock();
+        final int[] countsReached = new int[2];
+        final long[] lastCountTime = new long[1];
+        SynchronizedController controller = new SynchronizedController() {
+            @Override
+            public void incrementPlaybackCount(int counts) {
+                countsReached[0] += counts;
+                countsReached[1]++;
+                lastCountTime[0] = clock.nanoTime();
+
+                //drawing a count takes time, and now and then far longer than a count lasts
+                clock.advance(countsReached[1] % 100 == 0 ? 3 * COUNT_LENGTH + COUNT_LENGTH / 4 : COUNT_LENGTH / 2);
+            }
+
+            @Override
+            public boolean isPlaybackRunning() {
+                return countsReached[0] < COUNTS;
+            }
+
+            @Override
+            public int getPlaybackSpeed(int countsAhead) {
+                return (int) (COUNT_LENGTH / 1000000L);
+            }
+
+            @Override
+            public void positionsPropagated() {
+            }
+        };
+
+        PlaybackController playback = new PlaybackController(controller, clock);
+        playback.run();
+
+        //the last count is reached on time, however many stalls came before it
+        long scheduled = countsReached[0] * COUNT_LENGTH;
+        Assert.assertTrue("Playback ran ahead of the tempo", lastCountTime[0] >= scheduled);
+        Assert.assertTrue(lastCountTime[0] - scheduled < 5000000L);
+        Assert.assertTrue("Drifted " + playback.getMaxDrift() + " ns", playback.getMaxDrift() < 5000000L);
+
+        //each stall jumps over the counts it missed instead of drawing every one of them
+        Assert.assertEquals(countsReached[0] - countsReached[1], playback.getSkippedCounts());
+        Assert.assertTrue(playback.getSkippedCounts() > 0);
+        Assert.assertTrue(countsReached[1] < COUNTS);
+    }
+}
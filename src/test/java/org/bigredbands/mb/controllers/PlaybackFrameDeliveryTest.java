@@ -0,0 +1,67 @@
+package org.bigredbands.mb.controllers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PlaybackFrameDeliveryTest {
+
+    @Test
+    public void testOnlyLatestFrameIsDrawn() throws InterruptedException, InvocationTargetException {
+        final ArrayList<Integer> drawnCounts = new ArrayList<Integer>();
+        final ArrayList<Boolean> onEventThread = new ArrayList<Boolean>();
+        PlaybackFrameDelivery delivery = new PlaybackFrameDelivery(null) {
+            @Override
+            void drawFrame(int moveNumber, int countNumber) {
+                drawnCounts.add(countNumber);
+                onEventThread.add(SwingUtilities.isEventDispatchThread());
+            }
+        };
+
+        //keep the event thread busy while playback reaches a hundred counts
+        final CountDownLatch painting = new CountDownLatch(1);
+        final CountDownLatch published = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                painting.countDown();
+                try {
+                    published.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        painting.await();
+        for (int count = 1; count <= 100; count++) {
+            delivery.publish(1, count);
+        }
+        published.countDown();
+
+        //wait for the event thread to catch up
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertEquals(1, drawnCounts.size());
+        Assert.assertEquals(100, (int) drawnCounts.get(0));
+        Assert.assertTrue(onEventThread.get(0));
+        Assert.assertEquals(99, delivery.getDroppedFrames());
+
+        //once drawn, the next frame is delivered by itself
+        delivery.publish(2, 1);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertEquals(2, drawnCounts.size());
+        Assert.assertEquals(99, delivery.getDroppedFrames());
+    }
+}
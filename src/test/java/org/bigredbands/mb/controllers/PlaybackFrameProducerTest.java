@@ -0,0 +1,64 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.HashMap;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PlaybackFrameProducerTest {
+
+    @Test
+    public void testFramesMatchPositions() throws InterruptedException {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move());
+        drillInfo.addRankToMoves("A", new RankPosition(new Point(10, 10), new Point(15, 10)));
+        for (int i = 1; i < 3; i++) {
+            drillInfo.addMove(4, i);
+            drillInfo.getMoves().get(i).addCommand("A", new CommandPair(CommandPair.FM, 4));
+            drillInfo.getMoves().get(i).updatePositions("A", drillInfo.getMoves().get(i - 1).getEndPosition("A"));
+        }
+        DrillInfo expected = drillInfo.snapshot();
+
+        PlaybackFrameProducer producer = new PlaybackFrameProducer(drillInfo.snapshot());
+        Assert.assertNull(producer.getFrame(0));
+        Thread producerThread = new Thread(producer);
+        producerThread.start();
+
+        //the producer stops once the buffer is full
+        while (producer.getOccupancy() < producer.getCapacity()) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(10);
+        Assert.assertEquals(producer.getCapacity(), producer.getOccupancy());
+
+        //halfway through the third count
+        long step = 2 * PlaybackFrameProducer.STEPS_PER_COUNT + PlaybackFrameProducer.STEPS_PER_COUNT / 2;
+        Assert.assertEquals(expected.getMoves().get(1).getIntermediatePositions(2.5f), toMap(producer.getFrame(step)));
+        Assert.assertEquals(1, producer.getUnderruns());
+
+        //drawing the last frame lets the producer finish, with the ranks at the end of the drill
+        long lastStep = 8 * PlaybackFrameProducer.STEPS_PER_COUNT;
+        while (producerThread.isAlive()) {
+            producer.getFrame(lastStep);
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(new HashMap<String, RankPosition>(expected.getMoves().get(2).getEndPositions()),
+                toMap(producer.getFrame(lastStep)));
+        Assert.assertEquals(1, producer.getOccupancy());
+        producer.stop();
+        producerThread.join();
+    }
+
+    private static HashMap<String, RankPosition> toMap(PlaybackFrameProducer.Frame frame) {
+        HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+        for (int rank = 0; rank < frame.getRankNames().length; rank++) {
+            positions.put(frame.getRankNames()[rank], frame.getPositions().getPosition(rank));
+        }
+        return positions;
+    }
+}
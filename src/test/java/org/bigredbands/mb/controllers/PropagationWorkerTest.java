@@ -0,0 +1,167 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.DrillInfo;
+import org.bigredbands.mb.models.Move;
+import org.bigredbands.mb.models.Point;
+import org.bigredbands.mb.models.RankPosition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropagationWorkerTest {
+
+    private static final String[] RANK_NAMES = {"A", "B", "C", "D"};
+    private static final int MOVES = 40;
+    private static final int MOVE_COUNTS = 16;
+
+    private static final int[] COMMAND_TYPES = {CommandPair.FM, CommandPair.MT, CommandPair.RS,
+            CommandPair.GTCW_HEAD, CommandPair.PWCCW, CommandPair.EXPAND_BOTH, CommandPair.HALT};
+
+    private PropagationWorker worker;
+    private Thread workerThread;
+
+    @Before
+    public void startWorker() {
+        worker = new PropagationWorker(new SynchronizedController() {
+            @Override
+            public void incrementPlaybackCount(int counts) {
+            }
+
+            @Override
+            public boolean isPlaybackRunning() {
+                return false;
+            }
+
+            @Override
+            public int getPlaybackSpeed(int countsAhead) {
+                return 0;
+            }
+
+            @Override
+            public void positionsPropagated() {
+            }
+        });
+        workerThread = new Thread(worker);
+        workerThread.start();
+    }
+
+    @After
+    public void stopWorker() throws InterruptedException {
+        workerThread.interrupt();
+        workerThread.join();
+    }
+
+    @Test
+    public void testEditsMatchFullPropagation() {
+        Random random = new Random(7);
+        DrillInfo drillInfo = createDrill(random);
+
+        //submit edits faster than they can be propagated, so later edits supersede earlier ones
+        for (int edit = 0; edit < 300; edit++) {
+            String rankName = RANK_NAMES[random.nextInt(RANK_NAMES.length)];
+            int moveNumber = random.nextInt(MOVES);
+            synchronized (drillInfo) {
+                Move move = drillInfo.getMoves().get(moveNumber);
+                if (moveNumber == 0) {
+                    RankPosition position = new RankPosition(move.getEndPositions().get(rankName));
+                    position.incrementPointsXValue(random.nextFloat() - 0.5f);
+                    move.updatePositions(rankName, position);
+                }
+                else if (random.nextBoolean() && !move.getCommands().get(rankName).isEmpty()) {
+                    move.removeCommands(rankName, new int[] {0});
+                }
+                else {
+                    move.addCommand(rankName, createCommand(random));
+                }
+            }
+            worker.submit(drillInfo, rankName, moveNumber + 1);
+        }
+        worker.finish();
+        Assert.assertTrue(worker.isIdle());
+
+        synchronized (drillInfo) {
+            for (String rankName : RANK_NAMES) {
+                RankPosition expected = drillInfo.getMoves().get(0).getEndPositions().get(rankName);
+                for (int i = 1; i < MOVES; i++) {
+                    Move move = drillInfo.getMoves().get(i);
+                    Assert.assertTrue("Start of rank " + rankName + " in move " + i,
+                            expected.isIdentical(move.getStartPositions().get(rankName)));
+
+                    //recompute the end position from scratch on a copy of the move
+                    Move reference = new Move(MOVE_COUNTS, move.getStartPositions());
+                    for (CommandPair command : move.getCommands().get(rankName)) {
+                        reference.addCommand(rankName, command);
+                    }
+                    expected = reference.getEndPositions().get(rankName);
+                    Assert.assertTrue("End of rank " + rankName + " in move " + i,
+                            expected.isIdentical(move.getEndPositions().get(rankName)));
+                    Assert.assertTrue("Published end of rank " + rankName + " in move " + i,
+                            expected.isIdentical(move.publishPositions().get(rankName)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBoundariesAreShared() {
+        Random random = new Random(3);
+        DrillInfo drillInfo = createDrill(random);
+        synchronized (drillInfo) {
+            drillInfo.getMoves().get(5).addCommand("B", createCommand(random));
+        }
+        worker.submit(drillInfo, "B", 6);
+        worker.finish();
+
+        synchronized (drillInfo) {
+            for (int i = 1; i < MOVES; i++) {
+                RankPosition previousEnd = drillInfo.getMoves().get(i - 1).getEndPositions().get("B");
+                RankPosition start = drillInfo.getMoves().get(i).getStartPositions().get("B");
+                Assert.assertSame("Start of move " + i, previousEnd, start);
+                Assert.assertTrue(start.isFrozen());
+            }
+        }
+    }
+
+    @Test
+    public void testCancelDropsPendingWork() {
+        DrillInfo drillInfo = createDrill(new Random(11));
+        for (String rankName : RANK_NAMES) {
+            worker.submit(drillInfo, rankName, 1);
+        }
+        worker.cancel();
+        worker.finish();
+        Assert.assertTrue(worker.isIdle());
+    }
+
+    /**
+     * Creates a drill where every move already starts where the move before it ends
+     */
+    private DrillInfo createDrill(Random random) {
+        DrillInfo drillInfo = new DrillInfo();
+        Move firstMove = new Move();
+        for (int rank = 0; rank < RANK_NAMES.length; rank++) {
+            float x = 20 + rank * 15;
+            firstMove.addRank(RANK_NAMES[rank], new RankPosition(new Point(x, 10), new Point(x + 5, 12)));
+        }
+        drillInfo.getMoves().add(firstMove);
+
+        for (int i = 1; i < MOVES; i++) {
+            Map<String, RankPosition> endPositions = drillInfo.getMoves().get(i - 1).getEndPositions();
+            Move move = new Move(MOVE_COUNTS, endPositions);
+            for (String rankName : RANK_NAMES) {
+                move.addCommand(rankName, createCommand(random));
+            }
+            drillInfo.getMoves().add(move);
+        }
+        return drillInfo;
+    }
+
+    private CommandPair createCommand(Random random) {
+        return new CommandPair(COMMAND_TYPES[random.nextInt(COMMAND_TYPES.length)], 1 + random.nextInt(4));
+    }
+}
@@ -0,0 +1,104 @@
+package org.bigredbands.mb.controllers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.bigredbands.mb.models.CommandPair;
+import org.bigredbands.mb.models.RankPosition;
+import org.bigredbands.mb.views.ViewInterface;
+import org.junit.Assert;
+
+/**
+ * Stands in for the windows so the controller can be tested without a display, counting how
+ * often the whole view and the field alone are redrawn
+ */
+class StubView implements ViewInterface {
+
+    private MainController controller;
+
+    private int viewUpdates = 0;
+    private int fieldUpdates = 0;
+
+    void setController(MainController controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Returns the number of times the field, the moves and the move number were all redrawn
+     */
+    synchronized int getViewUpdates() {
+        return viewUpdates;
+    }
+
+    /**
+     * Returns the number of times only the field was redrawn
+     */
+    synchronized int getFieldUpdates() {
+        return fieldUpdates;
+    }
+
+    @Override
+    public synchronized void updateViewWithMoves(int numberOfMoves, int moveNumber, int countNumber) {
+        viewUpdates++;
+    }
+
+    @Override
+    public void displayError(String errorMessage) {
+        Assert.fail(errorMessage);
+    }
+
+    @Override
+    public synchronized void updateViewWithOneMove(int moveNumber, int countNumber) {
+        viewUpdates++;
+    }
+
+    @Override
+    public synchronized void updateView(int moveNumber, int countNumber) {
+        viewUpdates++;
+    }
+
+    @Override
+    public synchronized void updateFootballField(int moveNumber, int countNumber) {
+        fieldUpdates++;
+    }
+
+    @Override
+    public void createIntroView() {
+    }
+
+    @Override
+    public void createProjectView() {
+    }
+
+    @Override
+    public boolean isProjectViewCreated() {
+        return true;
+    }
+
+    @Override
+    public void updateSelectedRank(HashSet<String> rankNames, ArrayList<CommandPair> commands) {
+    }
+
+    @Override
+    public void disableProjectButtons() {
+    }
+
+    @Override
+    public void enableProjectButtons() {
+    }
+
+    @Override
+    public void setPlaybackButtonState(boolean isPlaybackRunning) {
+    }
+
+    @Override
+    public synchronized void updateViewWithRemoveMove(int moveNumber, int countNumber, int removeMove) {
+        viewUpdates++;
+    }
+
+    @Override
+    public HashMap<String, RankPosition> getRankPositions() {
+        return controller.getRankPositions();
+    }
+}
@@ -0,0 +1,180 @@
+package org.bigredbands.mb.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.bigredbands.mb.controllers.XMLParser;
+import org.bigredbands.mb.exceptions.DrillXMLException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class CommandProgramTest {
+
+    private final String path = "src/test/resources/XMLParser/";
+
+    // The number of counts given to each command of the synthetic moves
+    private static final int COMMAND_COUNTS = 3;
+
+    @Test
+    public void testFixturesMatchReference() throws ParserConfigurationException, SAXException, IOException, DrillXMLException {
+        File[] files = new File(path).listFiles();
+        Assert.assertNotNull(files);
+
+        int checked = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".pnd")) {
+                continue;
+            }
+            DrillInfo drillInfo = new XMLParser().load(file);
+            for (Move move : drillInfo.getMoves()) {
+                checked = checked + assertMatchesReference(file.getName(), move);
+            }
+        }
+        Assert.assertTrue("No ranks were found in the fixtures", checked > 0);
+    }
+
+    @Test
+    public void testEveryCommandMatchesReference() {
+        //start from a horizontal line, a vertical line, a diagonal line and a curve
+        RankPosition[] startPositions = {
+                new RankPosition(new Point(20, 30), new Point(40, 30)),
+                new RankPosition(new Point(60, 10), new Point(60, 25)),
+                new RankPosition(new Point(70, 40), new Point(80, 32)),
+                new RankPosition(new Point(10, 10), new Point(15, 14), new Point(10, 20), RankPosition.CURVE)
+        };
+
+        for (int rotation = 0; rotation <= CommandPair.EMPTY; rotation++) {
+            Move move = new Move();
+            move.setCounts((CommandPair.EMPTY + 1) * COMMAND_COUNTS);
+            HashMap<String, RankPosition> starts = new HashMap<String, RankPosition>();
+            HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+            for (int rank = 0; rank < startPositions.length; rank++) {
+                String rankName = Character.toString((char)('A' + rank));
+                starts.put(rankName, new RankPosition(startPositions[rank]));
+                rankCommands.put(rankName, createEveryCommand(rotation + rank));
+            }
+            move.setStartPositions(starts);
+            move.setCommands(rankCommands);
+            assertMatchesReference("rotation " + rotation, move);
+        }
+    }
+
+    @Test
+    public void testTranslationEndMatchesEndPosition() {
+        //start off the grid of step sizes, so summing the steps in a different order would round differently
+        HashMap<String, RankPosition> starts = new HashMap<String, RankPosition>();
+        starts.put("A", new RankPosition(new Point(12.3f, 7.1f), new Point(17.9f, 7.1f)));
+        starts.put("B", new RankPosition(new Point(33.33f, 41.7f), new Point(36.1f, 44.9f), new Point(33.33f, 48.2f), RankPosition.CURVE));
+
+        int[][] chain = {
+                {CommandPair.FM, 3}, {CommandPair.RS, 5}, {CommandPair.MT, 2}, {CommandPair.BM, 7},
+                {CommandPair.LS, 1}, {CommandPair.FM, 13}, {CommandPair.HALT, 0}, {CommandPair.LS, 11},
+                {CommandPair.BM, 2}, {CommandPair.RS, 6}, {CommandPair.MT, 0}, {CommandPair.FM, 1}
+        };
+        int counts = 0;
+        for (int[] command : chain) {
+            counts = counts + command[1];
+        }
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+        for (String rankName : starts.keySet()) {
+            ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+            for (int[] command : chain) {
+                commands.add(new CommandPair(command[0], command[1]));
+            }
+            rankCommands.put(rankName, commands);
+        }
+
+        Move move = new Move();
+        move.setCounts(counts);
+        move.setStartPositions(starts);
+        move.setCommands(rankCommands);
+
+        //the last count of the replay is where the next move starts from
+        String[] rankOrder = move.getRankOrder();
+        PositionBuffer frame = new PositionBuffer(rankOrder.length);
+        move.evaluate((float) move.getCounts(), frame);
+        for (int rank = 0; rank < rankOrder.length; rank++) {
+            String rankName = rankOrder[rank];
+            RankPosition endPosition = move.getEndPosition(rankName);
+            assertSamePosition("Rank " + rankName + " cursor", endPosition, new RankCursor(move, rankName).getPosition(move.getCounts()));
+            assertSamePosition("Rank " + rankName + " frame", endPosition, frame.getPosition(rank));
+        }
+    }
+
+    /**
+     * Creates one of every command, starting at the given command number and wrapping around,
+     * with a zero count mark time after every fourth command
+     */
+    private ArrayList<CommandPair> createEveryCommand(int firstCommand) {
+        ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+        for (int i = 0; i <= CommandPair.EMPTY; i++) {
+            int commandNumber = (firstCommand + i) % (CommandPair.EMPTY + 1);
+            CommandPair command = new CommandPair(commandNumber, COMMAND_COUNTS);
+            if (commandNumber == CommandPair.DTP) {
+                command.setDestination(new RankPosition(new Point(50 + i, 20), new Point(50 + i, 35)));
+            }
+            commands.add(command);
+            if (i % 4 == 3) {
+                commands.add(new CommandPair(CommandPair.MT, 0));
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Checks every rank of the move at every count, in order and then backwards, against the reference
+     *
+     * @return - the number of ranks checked
+     */
+    private int assertMatchesReference(String description, Move move) {
+        for (String rankName : move.getStartPositions().keySet()) {
+            RankCursor cursor = new RankCursor(move, rankName);
+            for (int count = 0; count <= move.getCounts(); count++) {
+                assertSamePosition(description + ", rank " + rankName + ", count " + count,
+                        getReferencePosition(move, rankName, count), cursor.getPosition(count));
+            }
+            for (int count = move.getCounts(); count >= 0; count--) {
+                assertSamePosition(description + ", rank " + rankName + ", count " + count,
+                        getReferencePosition(move, rankName, count), cursor.getPosition(count));
+            }
+        }
+        return move.getStartPositions().size();
+    }
+
+    /**
+     * Replays the commands of the rank through Move.movePortionCounts one at a time
+     */
+    private RankPosition getReferencePosition(Move move, String rankName, int counts) {
+        RankPosition position = new RankPosition(move.getStartPositions().get(rankName));
+        int countsBefore = 0;
+        for (CommandPair command : move.getCommands().get(rankName)) {
+            if (countsBefore >= counts) {
+                break;
+            }
+            int portion = Math.min(command.getCounts(), counts - countsBefore);
+            Move.movePortionCounts(command.getCommand(), position, portion, command.getCounts(), command.getDest());
+            countsBefore = countsBefore + command.getCounts();
+        }
+        return position;
+    }
+
+    /**
+     * Checks that two positions are identical down to the bit, unlike RankPosition.equals
+     */
+    private void assertSamePosition(String message, RankPosition expected, RankPosition actual) {
+        assertSamePoint(message + ", front", expected.getFront(), actual.getFront());
+        assertSamePoint(message + ", midpoint", expected.getMidpoint(), actual.getMidpoint());
+        assertSamePoint(message + ", end", expected.getEnd(), actual.getEnd());
+        Assert.assertEquals(message + ", line type", expected.getLineType(), actual.getLineType());
+    }
+
+    private void assertSamePoint(String message, Point expected, Point actual) {
+        Assert.assertEquals(message + ", x", Float.floatToIntBits(expected.getX()), Float.floatToIntBits(actual.getX()));
+        Assert.assertEquals(message + ", y", Float.floatToIntBits(expected.getY()), Float.floatToIntBits(actual.getY()));
+    }
+}
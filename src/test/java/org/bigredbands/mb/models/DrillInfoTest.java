@@ -0,0 +1,110 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DrillInfoTest {
+
+    @Test
+    public void testRenameRank() {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move());
+        drillInfo.addRankToMoves("A", new RankPosition(new Point(10, 10), new Point(15, 10)));
+        drillInfo.addRankToMoves("B", new RankPosition(new Point(30, 10), new Point(35, 10)));
+        for (int i = 1; i < 4; i++) {
+            drillInfo.addMove(8, i);
+            drillInfo.getMoves().get(i).addCommand("A", new CommandPair(CommandPair.FM, 8));
+            drillInfo.getMoves().get(i).updatePositions("A", drillInfo.getMoves().get(i - 1).getEndPosition("A"));
+        }
+
+        ArrayList<RankPosition> endPositions = new ArrayList<RankPosition>();
+        ArrayList<ArrayList<CommandPair>> commands = new ArrayList<ArrayList<CommandPair>>();
+        HashMap<String, RankPosition> lastFrame = drillInfo.getMoves().get(3).getIntermediatePositions(8);
+        for (Move move : drillInfo.getMoves()) {
+            endPositions.add(move.getEndPosition("A"));
+            commands.add(move.getCommands().get("A"));
+        }
+
+        Assert.assertEquals("", drillInfo.renameRank("A", "Z"));
+        Assert.assertFalse(drillInfo.doesRankExist("A"));
+        for (int i = 0; i < drillInfo.getMoves().size(); i++) {
+            Move move = drillInfo.getMoves().get(i);
+            Assert.assertSame(endPositions.get(i), move.getEndPositions().get("Z"));
+            Assert.assertSame(commands.get(i), move.getCommands().get("Z"));
+            Assert.assertNull(move.getEndPositions().get("A"));
+        }
+
+        //anything cached by rank name has to follow the rename
+        Move lastMove = drillInfo.getMoves().get(3);
+        Assert.assertArrayEquals(new String[] {"B", "Z"}, lastMove.getRankOrder());
+        Assert.assertEquals(lastFrame.get("A"), lastMove.getIntermediatePositions(8).get("Z"));
+        Assert.assertTrue(lastMove.publishPositions().containsKey("Z"));
+
+        Assert.assertFalse(drillInfo.renameRank("Z", "B").isEmpty());
+        Assert.assertFalse(drillInfo.renameRank("A", "Y").isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByEdits() {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move());
+        drillInfo.addRankToMoves("A", new RankPosition(new Point(10, 10), new Point(15, 10)));
+        drillInfo.addMove(8, 1);
+        Move move = drillInfo.getMoves().get(1);
+        move.addCommand("A", new CommandPair(CommandPair.FM, 4, "step off"));
+
+        DrillInfo snapshot = drillInfo.snapshot();
+        Move snapshotMove = snapshot.getMoves().get(1);
+        ArrayList<CommandPair> snapshotCommands = new ArrayList<CommandPair>(snapshotMove.getCommands().get("A"));
+        RankPosition snapshotEnd = snapshotMove.getEndPosition("A");
+        Assert.assertSame(move.getEndPosition("A"), snapshotEnd);
+
+        move.renameCommand("A", 0, "go");
+        move.addCommand("A", new CommandPair(CommandPair.RS, 4));
+        drillInfo.addRankToMoves("B", new RankPosition(new Point(30, 10), new Point(35, 10)));
+        drillInfo.renameRank("A", "Z");
+
+        Assert.assertEquals(snapshotCommands, snapshotMove.getCommands().get("A"));
+        Assert.assertSame(snapshotEnd, snapshotMove.getEndPosition("A"));
+        Assert.assertFalse(snapshotMove.getStartPositions().containsKey("B"));
+        Assert.assertEquals(new CommandPair(CommandPair.FM, 4, "go"), move.getCommands().get("Z").get(0));
+        Assert.assertFalse(snapshotEnd.isIdentical(move.getEndPosition("Z")));
+
+        try {
+            snapshotMove.addCommand("A", new CommandPair(CommandPair.FM, 2));
+            Assert.fail("A snapshot should not be editable");
+        }
+        catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testInsertedMoveSharesPositions() {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move());
+        drillInfo.addRankToMoves("A", new RankPosition(new Point(10, 10), new Point(15, 10)));
+        for (int i = 1; i < 4; i++) {
+            drillInfo.addMove(8, i);
+            drillInfo.getMoves().get(i).addCommand("A", new CommandPair(CommandPair.FM, 8));
+            drillInfo.getMoves().get(i).updatePositions("A", drillInfo.getMoves().get(i - 1).getEndPosition("A"));
+        }
+
+        //inserting in the middle starts from the move before it, not the last move
+        RankPosition previousEnd = drillInfo.getMoves().get(1).getEndPosition("A");
+        drillInfo.addMove(8, 2);
+        Move inserted = drillInfo.getMoves().get(2);
+        Assert.assertSame(previousEnd, inserted.getStartPositions().get("A"));
+        Assert.assertSame(previousEnd, inserted.getEndPosition("A"));
+        Assert.assertTrue(drillInfo.getMoves().get(3).isStartUpToDate("A", inserted.getEndPosition("A")));
+
+        //the first command copies the shared empty list instead of changing it for every rank
+        drillInfo.addRankToMoves("B", new RankPosition(new Point(30, 10), new Point(35, 10)));
+        Move added = new Move(8, inserted.getEndPositions());
+        Assert.assertEquals("", added.addCommand("A", new CommandPair(CommandPair.FM, 2)));
+        Assert.assertTrue(added.getCommands().get("B").isEmpty());
+        Assert.assertSame(previousEnd, inserted.getEndPosition("A"));
+    }
+}
@@ -0,0 +1,117 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Measures how much measuring the length, reference angle and pivot of gate turns, pinwheels
+ * and expansions once per command saves over measuring them on every count.  Both sides start
+ * each count from the position at the start of its command and run one partial command; the
+ * only difference is whether the trig for the command's geometry is cached.  Not part of the
+ * normal test run; run it with
+ *
+ *     mvn test -Dtest=GateTurnBenchmark
+ */
+public class GateTurnBenchmark {
+
+    private static final int RANKS = 150;
+    private static final int MOVE_COUNTS = 64;
+    private static final int WARMUP_RUNS = 50;
+    private static final int MEASURED_RUNS = 51;
+
+    @Test
+    public void benchmarkGateTurns() {
+        Move move = createGateTurnMove(new Random(42));
+        String[] rankNames = move.getStartPositions().keySet().toArray(new String[0]);
+
+        RankCursor[] cursors = new RankCursor[rankNames.length];
+        for (int i = 0; i < rankNames.length; i++) {
+            cursors[i] = new RankCursor(move, rankNames[i]);
+        }
+
+        //the position of every rank at the start of each of its commands, for the uncached side
+        RankPosition[][] commandStarts = new RankPosition[rankNames.length][];
+        for (int rank = 0; rank < rankNames.length; rank++) {
+            ArrayList<CommandPair> commands = move.getCommands().get(rankNames[rank]);
+            commandStarts[rank] = new RankPosition[commands.size()];
+            RankPosition position = new RankPosition(move.getStartPositions().get(rankNames[rank]));
+            for (int i = 0; i < commands.size(); i++) {
+                commandStarts[rank][i] = new RankPosition(position);
+                CommandPair command = commands.get(i);
+                Move.movePortionCounts(command.getCommand(), position, command.getCounts(), command.getCounts(), command.getDest());
+            }
+        }
+
+        RankPosition scratch = new RankPosition(move.getStartPositions().get(rankNames[0]));
+        long[] uncachedTimes = new long[MEASURED_RUNS];
+        long[] cachedTimes = new long[MEASURED_RUNS];
+        for (int run = -WARMUP_RUNS; run < MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            for (int rank = 0; rank < rankNames.length; rank++) {
+                ArrayList<CommandPair> commands = move.getCommands().get(rankNames[rank]);
+                for (int i = 0; i < commands.size(); i++) {
+                    CommandPair command = commands.get(i);
+                    for (int count = 1; count <= command.getCounts(); count++) {
+                        scratch.set(commandStarts[rank][i]);
+                        Move.movePortionCounts(command.getCommand(), scratch, count, command.getCounts(), command.getDest());
+                    }
+                }
+            }
+            long uncached = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int rank = 0; rank < rankNames.length; rank++) {
+                for (int count = 1; count <= MOVE_COUNTS; count++) {
+                    cursors[rank].getPosition(count, scratch);
+                }
+            }
+            long cached = System.nanoTime() - start;
+
+            if (run >= 0) {
+                uncachedTimes[run] = uncached;
+                cachedTimes[run] = cached;
+            }
+        }
+
+        Arrays.sort(uncachedTimes);
+        Arrays.sort(cachedTimes);
+        long uncached = uncachedTimes[MEASURED_RUNS / 2];
+        long cached = cachedTimes[MEASURED_RUNS / 2];
+        System.out.println(String.format("%d ranks x %d counts of gate turns, pinwheels and expansions: "
+                + "measured every count %.1f us, measured once per command %.1f us (%.2fx)",
+                RANKS, MOVE_COUNTS, uncached / 1000.0, cached / 1000.0, (double) uncached / cached));
+    }
+
+    /**
+     * Creates a move where every rank only gate turns, pinwheels, expands and condenses
+     */
+    private Move createGateTurnMove(Random random) {
+        int[] commandTypes = {CommandPair.GTCW_HEAD, CommandPair.GTCW_TAIL, CommandPair.GTCCW_HEAD, CommandPair.GTCCW_TAIL,
+                CommandPair.PWCW, CommandPair.PWCCW, CommandPair.EXPAND_BOTH, CommandPair.CONDENSE_BOTH};
+
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+        for (int rank = 0; rank < RANKS; rank++) {
+            String rankName = "R" + rank;
+            float x = random.nextFloat() * 100;
+            float y = random.nextFloat() * 50;
+            startPositions.put(rankName, new RankPosition(new Point(x, y), new Point(x + 5, y + 2)));
+
+            ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+            for (int i = 0; i < MOVE_COUNTS / 8; i++) {
+                commands.add(new CommandPair(commandTypes[random.nextInt(commandTypes.length)], 8));
+            }
+            rankCommands.put(rankName, commands);
+        }
+
+        Move move = new Move();
+        move.setCounts(MOVE_COUNTS);
+        move.setStartPositions(startPositions);
+        move.setCommands(rankCommands);
+        return move;
+    }
+}
@@ -0,0 +1,141 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MoveEvaluateTest {
+
+    private static final int COUNTS = 8;
+
+    private final int maxPositions = KeyframeCache.getMaxPositions();
+
+    @After
+    public void restoreCache() {
+        KeyframeCache.setMaxPositions(maxPositions);
+    }
+
+    @Test
+    public void testSlotLayout() {
+        for (boolean cached : new boolean[] {true, false}) {
+            KeyframeCache.setMaxPositions(cached ? maxPositions : 0);
+            Move move = createMove();
+            String[] rankOrder = move.getRankOrder();
+            Assert.assertArrayEquals(new String[] {"A", "B", "C"}, rankOrder);
+
+            PositionBuffer buffer = new PositionBuffer(rankOrder.length * 5);
+            move.evaluate(2, 6, buffer);
+            for (int count = 2; count <= 6; count++) {
+                HashMap<String, RankPosition> expected = move.getIntermediatePositions(count);
+                for (int rank = 0; rank < rankOrder.length; rank++) {
+                    Assert.assertEquals("Rank " + rankOrder[rank] + " at count " + count + (cached ? "" : " uncached"),
+                            expected.get(rankOrder[rank]), buffer.getPosition((count - 2) * rankOrder.length + rank));
+                }
+            }
+
+            //one count at a time fills the first slots only
+            PositionBuffer frame = new PositionBuffer(rankOrder.length);
+            move.evaluate(4, frame);
+            for (int rank = 0; rank < rankOrder.length; rank++) {
+                Assert.assertEquals(buffer.getPosition(2 * rankOrder.length + rank), frame.getPosition(rank));
+            }
+        }
+    }
+
+    @Test
+    public void testCountsOutsideMoveAreClamped() {
+        for (boolean cached : new boolean[] {true, false}) {
+            KeyframeCache.setMaxPositions(cached ? maxPositions : 0);
+            Move move = createMove();
+            String[] rankOrder = move.getRankOrder();
+
+            PositionBuffer buffer = new PositionBuffer(rankOrder.length * 3);
+            move.evaluate(-2, 0, buffer);
+            for (int slot = 0; slot < buffer.getCapacity(); slot++) {
+                Assert.assertEquals(move.getStartPositions().get(rankOrder[slot % rankOrder.length]), buffer.getPosition(slot));
+            }
+
+            move.evaluate(COUNTS, COUNTS + 2, buffer);
+            for (int slot = 0; slot < buffer.getCapacity(); slot++) {
+                Assert.assertEquals(move.getEndPosition(rankOrder[slot % rankOrder.length]), buffer.getPosition(slot));
+            }
+
+            move.evaluate(COUNTS + 0.5f, buffer);
+            for (int rank = 0; rank < rankOrder.length; rank++) {
+                Assert.assertEquals(move.getEndPosition(rankOrder[rank]), buffer.getPosition(rank));
+            }
+        }
+    }
+
+    @Test
+    public void testFractionalCounts() {
+        Move move = createMove();
+        String[] rankOrder = move.getRankOrder();
+        PositionBuffer buffer = new PositionBuffer(rankOrder.length);
+        for (float counts : new float[] {0.25f, 2.5f, 3f, 7.75f}) {
+            move.evaluate(counts, buffer);
+            HashMap<String, RankPosition> expected = move.getIntermediatePositions(counts);
+            for (int rank = 0; rank < rankOrder.length; rank++) {
+                Assert.assertEquals(expected.get(rankOrder[rank]), buffer.getPosition(rank));
+            }
+        }
+    }
+
+    @Test
+    public void testBufferTooSmall() {
+        Move move = createMove();
+        try {
+            move.evaluate(0, 2, new PositionBuffer(8));
+            Assert.fail("Three counts of three ranks should not fit in eight slots");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        try {
+            move.evaluate(2, 1, new PositionBuffer(9));
+            Assert.fail("The last count should not be before the first count");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        try {
+            move.evaluate(1.5f, new PositionBuffer(2));
+            Assert.fail("Three ranks should not fit in two slots");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        //a buffer larger than needed leaves the slots after the ranks alone
+        PositionBuffer buffer = new PositionBuffer(4);
+        buffer.store(3, new RankPosition(new Point(1, 2), new Point(3, 4)));
+        move.evaluate(1, buffer);
+        Assert.assertEquals(new RankPosition(new Point(1, 2), new Point(3, 4)), buffer.getPosition(3));
+    }
+
+    /**
+     * Creates a move whose ranks were added out of name order
+     */
+    private Move createMove() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        startPositions.put("C", new RankPosition(new Point(50, 20), new Point(60, 20)));
+        startPositions.put("A", new RankPosition(new Point(10, 10), new Point(20, 10)));
+        startPositions.put("B", new RankPosition(new Point(30, 30), new Point(30, 40)));
+
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+        rankCommands.put("C", new ArrayList<CommandPair>(Arrays.asList(new CommandPair(CommandPair.GTCW_HEAD, COUNTS))));
+        rankCommands.put("A", new ArrayList<CommandPair>(Arrays.asList(new CommandPair(CommandPair.FM, 4),
+                new CommandPair(CommandPair.RS, 4))));
+        rankCommands.put("B", new ArrayList<CommandPair>(Arrays.asList(new CommandPair(CommandPair.EXPAND_BOTH, 2),
+                new CommandPair(CommandPair.PWCCW, 6))));
+
+        Move move = new Move();
+        move.setCounts(COUNTS);
+        move.setStartPositions(startPositions);
+        move.setCommands(rankCommands);
+        return move;
+    }
+}
@@ -0,0 +1,146 @@
+package org.bigredbands.mb.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Compares sequential and parallel rank evaluation for drills of increasing size, to find the
+ * number of ranks where {@link ParallelEvaluation} starts to pay off.  Not part of the normal
+ * test run; run it with
+ *
+ *     mvn test -Dtest=ParallelEvaluationBenchmark
+ */
+public class ParallelEvaluationBenchmark {
+
+    private static final int[] RANK_COUNTS = {4, 8, 16, 32, 48, 64, 96, 128, 256, 512};
+    private static final int MOVE_COUNTS = 64;
+    private static final int WARMUP_RUNS = 30;
+    private static final int MEASURED_RUNS = 31;
+
+    // Parallel evaluation has to be at least this much faster to count as paying off, to rule out noise
+    private static final double REQUIRED_SPEEDUP = 1.1;
+
+    @Test
+    public void benchmarkCrossover() {
+        if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            System.out.println("Only one processor is available, so parallel evaluation always runs on the calling thread");
+        }
+
+        int savedThreshold = ParallelEvaluation.getThreshold();
+        try {
+            System.out.println("ranks  build seq (us)  build par (us)  frame seq (us)  frame par (us)");
+            int buildCrossover = -1;
+            int frameCrossover = -1;
+            for (int ranks : RANK_COUNTS) {
+                Move move = createMove(ranks, new Random(ranks));
+                String[] rankNames = move.getStartPositions().keySet().toArray(new String[0]);
+                int[] rankIds = new int[rankNames.length];
+                RankCursor[] cursors = new RankCursor[rankNames.length];
+                for (int i = 0; i < rankNames.length; i++) {
+                    rankIds[i] = move.getRankRegistry().getId(rankNames[i]);
+                    cursors[i] = new RankCursor(move, rankIds[i]);
+                }
+
+                ParallelEvaluation.setThreshold(Integer.MAX_VALUE);
+                long buildSequential = timeBuild(move, rankIds, cursors);
+                long frameSequential = timeFrame(move);
+                ParallelEvaluation.setThreshold(1);
+                long buildParallel = timeBuild(move, rankIds, cursors);
+                long frameParallel = timeFrame(move);
+
+                System.out.println(String.format("%5d  %14.1f  %14.1f  %14.1f  %14.1f", ranks,
+                        buildSequential / 1000.0, buildParallel / 1000.0, frameSequential / 1000.0, frameParallel / 1000.0));
+                if (buildCrossover < 0 && buildParallel * REQUIRED_SPEEDUP < buildSequential) {
+                    buildCrossover = ranks;
+                }
+                if (frameCrossover < 0 && frameParallel * REQUIRED_SPEEDUP < frameSequential) {
+                    frameCrossover = ranks;
+                }
+            }
+            if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+                System.out.println("Parallel keyframe builds first win at " + describe(buildCrossover)
+                        + ", single frames at " + describe(frameCrossover)
+                        + " (" + ForkJoinPool.getCommonPoolParallelism() + " pool threads)");
+            }
+        }
+        finally {
+            ParallelEvaluation.setThreshold(savedThreshold);
+        }
+    }
+
+    private String describe(int ranks) {
+        return ranks < 0 ? "no tested size" : ranks + " ranks";
+    }
+
+    /**
+     * Returns the median time in nanoseconds to build the keyframe table of the move
+     */
+    private long timeBuild(Move move, int[] rankIds, RankCursor[] cursors) {
+        long[] times = new long[MEASURED_RUNS];
+        for (int run = -WARMUP_RUNS; run < MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            KeyframeTable.build(move, rankIds, cursors);
+            long time = System.nanoTime() - start;
+            if (run >= 0) {
+                times[run] = time;
+            }
+        }
+        Arrays.sort(times);
+        return times[MEASURED_RUNS / 2];
+    }
+
+    /**
+     * Returns the median time in nanoseconds to evaluate one fractional count of the move, as smooth playback does
+     */
+    private long timeFrame(Move move) {
+        long[] times = new long[MEASURED_RUNS];
+        for (int run = -WARMUP_RUNS; run < MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            move.getIntermediatePositions(MOVE_COUNTS / 2 + 0.5f);
+            long time = System.nanoTime() - start;
+            if (run >= 0) {
+                times[run] = time;
+            }
+        }
+        Arrays.sort(times);
+        return times[MEASURED_RUNS / 2];
+    }
+
+    /**
+     * Creates a move where every rank runs a random mix of commands
+     */
+    private Move createMove(int ranks, Random random) {
+        int[] commandTypes = {CommandPair.FM, CommandPair.BM, CommandPair.RS, CommandPair.LS, CommandPair.MT,
+                CommandPair.GTCW_HEAD, CommandPair.GTCCW_TAIL, CommandPair.PWCW, CommandPair.PWCCW,
+                CommandPair.EXPAND_BOTH, CommandPair.CONDENSE_BOTH, CommandPair.CURVE_LEFT, CommandPair.FLAT_TO_ENDS};
+
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+        for (int rank = 0; rank < ranks; rank++) {
+            String rankName = "R" + rank;
+            float x = random.nextFloat() * 100;
+            float y = random.nextFloat() * 50;
+            startPositions.put(rankName, new RankPosition(new Point(x, y), new Point(x + 5, y + 2)));
+
+            ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+            int countsLeft = MOVE_COUNTS;
+            while (countsLeft > 0) {
+                int counts = Math.min(countsLeft, 2 + random.nextInt(7));
+                commands.add(new CommandPair(commandTypes[random.nextInt(commandTypes.length)], counts));
+                countsLeft = countsLeft - counts;
+            }
+            rankCommands.put(rankName, commands);
+        }
+
+        Move move = new Move();
+        move.setCounts(MOVE_COUNTS);
+        move.setStartPositions(startPositions);
+        move.setCommands(rankCommands);
+        return move;
+    }
+}
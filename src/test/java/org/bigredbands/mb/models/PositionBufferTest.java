@@ -0,0 +1,41 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PositionBufferTest {
+
+    @Test
+    public void testLoadFrameReusesPositions() {
+        PositionBuffer buffer = new PositionBuffer(3);
+        buffer.store(0, new RankPosition(new Point(10, 10), new Point(20, 10)));
+        buffer.store(1, new RankPosition(new Point(30, 30), new Point(30, 40)));
+        HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+        buffer.load(new String[] {"A", "B"}, positions);
+        Assert.assertEquals(2, positions.size());
+        RankPosition positionA = positions.get("A");
+        RankPosition positionB = positions.get("B");
+        Assert.assertEquals(new RankPosition(new Point(10, 10), new Point(20, 10)), positionA);
+
+        //the next frame overwrites the same objects
+        buffer.store(0, new RankPosition(new Point(11, 10), new Point(21, 10)));
+        buffer.store(1, new RankPosition(new Point(50, 20), new Point(55, 25), new Point(60, 20), RankPosition.CURVE));
+        buffer.load(new String[] {"A", "B"}, positions);
+        Assert.assertSame(positionA, positions.get("A"));
+        Assert.assertSame(positionB, positions.get("B"));
+        Assert.assertEquals(new RankPosition(new Point(11, 10), new Point(21, 10)), positionA);
+        Assert.assertEquals(new RankPosition(new Point(50, 20), new Point(55, 25), new Point(60, 20), RankPosition.CURVE),
+                positionB);
+
+        //a rank that is gone is taken out, and a new one gets its own position
+        buffer.store(1, new RankPosition(new Point(70, 10), new Point(80, 10)));
+        buffer.load(new String[] {"A", "C"}, positions);
+        Assert.assertEquals(2, positions.size());
+        Assert.assertFalse(positions.containsKey("B"));
+        Assert.assertSame(positionA, positions.get("A"));
+        Assert.assertNotSame(positionB, positions.get("C"));
+        Assert.assertEquals(new RankPosition(new Point(70, 10), new Point(80, 10)), positions.get("C"));
+    }
+}
@@ -0,0 +1,140 @@
+package org.bigredbands.mb.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class RankPositionAllocationTest {
+
+    // The number of passes through the move used to warm up and then measure
+    private static final int WARMUP_PASSES = 500;
+    private static final int MEASURED_PASSES = 500;
+
+    // The frames drawn for each count, the same as playback
+    private static final int STEPS_PER_COUNT = 32;
+
+    // The most bytes the measurement itself may allocate, however many frames are played
+    private static final long MEASUREMENT_OVERHEAD = 1024;
+
+    @Test
+    public void testPlaybackDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        long threadId = Thread.currentThread().getId();
+
+        //draw frames the way playback does: evaluate the move into a buffer, then load the buffer
+        //into the positions handed to the field
+        Move move = createMoveWithEveryCommand();
+        String[] rankNames = move.getRankOrder();
+        PositionBuffer buffer = new PositionBuffer(rankNames.length);
+        HashMap<String, RankPosition> positions = new HashMap<String, RankPosition>();
+
+        //let the JIT settle before measuring
+        playThrough(move, rankNames, buffer, positions, WARMUP_PASSES);
+        //the first reading sets up the bean's own state, which would otherwise be counted below
+        threadBean.getThreadAllocatedBytes(threadId);
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long frames = playThrough(move, rankNames, buffer, positions, MEASURED_PASSES);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue("Allocated " + allocated + " bytes over " + frames + " frames of " + rankNames.length + " ranks",
+                allocated < MEASUREMENT_OVERHEAD);
+        assertEquals(move.getEndPositions(), positions);
+    }
+
+    /**
+     * Plays through every frame of the move the given number of times, ending on its last count
+     *
+     * @return - the number of frames evaluated
+     */
+    private long playThrough(Move move, String[] rankNames, PositionBuffer buffer,
+            HashMap<String, RankPosition> positions, int passes) {
+        long frames = 0;
+        int lastStep = move.getCounts() * STEPS_PER_COUNT;
+        for (int pass = 0; pass < passes; pass++) {
+            for (int step = 0; step <= lastStep; step++) {
+                move.evaluate(step / (float) STEPS_PER_COUNT, buffer);
+                buffer.load(rankNames, positions);
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    private com.sun.management.ThreadMXBean getThreadBean() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean;
+    }
+
+    /**
+     * Creates a 64 count move whose ranks use every command that movePortionCounts dispatches
+     */
+    private Move createMoveWithEveryCommand() {
+        HashMap<String, RankPosition> startPositions = new HashMap<String, RankPosition>();
+        HashMap<String, ArrayList<CommandPair>> rankCommands = new HashMap<String, ArrayList<CommandPair>>();
+
+        startPositions.put("A", new RankPosition(new Point(20, 30), new Point(40, 30)));
+        ArrayList<CommandPair> commands = new ArrayList<CommandPair>();
+        commands.add(new CommandPair(CommandPair.FM, 4));
+        commands.add(new CommandPair(CommandPair.GTCW_HEAD, 8));
+        commands.add(new CommandPair(CommandPair.GTCCW_TAIL, 8));
+        commands.add(new CommandPair(CommandPair.PWCW, 8));
+        commands.add(new CommandPair(CommandPair.PWCCW, 8));
+        commands.add(new CommandPair(CommandPair.EXPAND_BOTH, 4));
+        commands.add(new CommandPair(CommandPair.CONDENSE_HEAD, 4));
+        commands.add(new CommandPair(CommandPair.MT, 4));
+        commands.add(new CommandPair(CommandPair.BM, 4));
+        commands.add(new CommandPair(CommandPair.RS, 4));
+        commands.add(new CommandPair(CommandPair.LS, 4));
+        commands.add(new CommandPair(CommandPair.HALT, 4));
+        rankCommands.put("A", commands);
+
+        startPositions.put("B", new RankPosition(new Point(50, 20), new Point(60, 25)));
+        commands = new ArrayList<CommandPair>();
+        commands.add(new CommandPair(CommandPair.CURVE_LEFT, 4));
+        commands.add(new CommandPair(CommandPair.FLAT_TO_MID, 4));
+        commands.add(new CommandPair(CommandPair.CURVE_RIGHT, 4));
+        commands.add(new CommandPair(CommandPair.FLAT_TO_ENDS, 4));
+        CommandPair dtp = new CommandPair(CommandPair.DTP, 8);
+        dtp.setDestination(new RankPosition(new Point(70, 20), new Point(80, 20)));
+        commands.add(dtp);
+        commands.add(new CommandPair(CommandPair.CORNER_LB, 8));
+        commands.add(new CommandPair(CommandPair.CORNER_RF, 8));
+        commands.add(new CommandPair(CommandPair.EXPAND_HEAD, 4));
+        commands.add(new CommandPair(CommandPair.EXPAND_TAIL, 4));
+        commands.add(new CommandPair(CommandPair.CONDENSE_TAIL, 4));
+        commands.add(new CommandPair(CommandPair.CONDENSE_BOTH, 4));
+        commands.add(new CommandPair(CommandPair.GTCW_TAIL, 4));
+        commands.add(new CommandPair(CommandPair.GTCCW_HEAD, 4));
+        rankCommands.put("B", commands);
+
+        startPositions.put("C", new RankPosition(new Point(90, 10), new Point(90, 30)));
+        commands = new ArrayList<CommandPair>();
+        commands.add(new CommandPair(CommandPair.CORNER_FR, 8));
+        commands.add(new CommandPair(CommandPair.CORNER_BL, 8));
+        commands.add(new CommandPair(CommandPair.CORNER_LF, 8));
+        commands.add(new CommandPair(CommandPair.CORNER_RB, 8));
+        commands.add(new CommandPair(CommandPair.CORNER_FL, 8));
+        commands.add(new CommandPair(CommandPair.CORNER_BR, 8));
+        dtp = new CommandPair(CommandPair.DTP, 8);
+        dtp.setDestination(new RankPosition(new Point(80, 10), new Point(85, 15), new Point(80, 30), RankPosition.CURVE));
+        commands.add(dtp);
+        commands.add(new CommandPair(CommandPair.PWCW, 8));
+        rankCommands.put("C", commands);
+
+        Move move = new Move();
+        move.setCounts(64);
+        move.setStartPositions(startPositions);
+        move.setCommands(rankCommands);
+        return move;
+    }
+}
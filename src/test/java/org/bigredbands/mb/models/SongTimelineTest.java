@@ -0,0 +1,48 @@
+package org.bigredbands.mb.models;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SongTimelineTest {
+
+    @Test
+    public void testLookupCounts() {
+        DrillInfo drillInfo = new DrillInfo();
+        drillInfo.getMoves().add(new Move());
+        drillInfo.addMove(8, 1);
+        drillInfo.addMove(0, 2);
+        drillInfo.addMove(6, 3);
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        counts.put(3, 2);
+        drillInfo.setCountsHashMap(counts);
+        HashMap<Integer, Integer> tempos = new HashMap<Integer, Integer>();
+        tempos.put(4, 60);
+        drillInfo.setTempoHashMap(tempos);
+
+        SongTimeline timeline = drillInfo.getTimeline();
+        Assert.assertSame(timeline, drillInfo.getTimeline());
+        Assert.assertEquals(14, timeline.getTotalCounts());
+
+        //the move without counts is skipped over
+        Assert.assertEquals(1, timeline.getMove(8));
+        Assert.assertEquals(3, timeline.getMove(9));
+        Assert.assertEquals(1, timeline.getCountInMove(9));
+
+        //two measures of 4/4, then 2 counts per measure from measure 3
+        Assert.assertEquals(2, timeline.getMeasure(8));
+        Assert.assertEquals(3, timeline.getMeasure(10));
+        Assert.assertEquals(4, timeline.getMeasure(11));
+        Assert.assertEquals(120, timeline.getTempo(10));
+        Assert.assertEquals(1000, timeline.getCountLength(11));
+        Assert.assertEquals(11 * 500 + 1000, timeline.getTime(12));
+        Assert.assertEquals(11, timeline.getCount(6499));
+
+        //changing the song constants rebuilds the timeline
+        tempos = new HashMap<Integer, Integer>();
+        drillInfo.setTempoHashMap(tempos);
+        Assert.assertNotSame(timeline, drillInfo.getTimeline());
+        Assert.assertEquals(500, drillInfo.getTimeline().getCountLength(11));
+    }
+}